@@ -0,0 +1,95 @@
+package io.ryhunwashere.auditlogger;
+
+import io.ryhunwashere.auditlogger.dto.LogDTO;
+import io.ryhunwashere.auditlogger.util.PropsLoader;
+import org.jetbrains.annotations.NotNull;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * Shared setup of the benchmarks.<br>
+ * Every synthetic log is derived from a fixed seed, so each run measures exactly the same inputs
+ * and results stay comparable across releases.
+ */
+public final class BenchmarkFixtures {
+    public static final long SEED = 42L;
+
+    private static final Instant BASE_TIMESTAMP = Instant.parse("2025-01-01T00:00:00Z");
+    private static final String[] WORLDS = {"world", "world_nether", "world_the_end"};
+    private static final String[] BLOCKS = {"minecraft:stone", "minecraft:dirt", "minecraft:oak_log",
+            "minecraft:diamond_ore", "minecraft:chest"};
+    private static final int PLAYERS = 200;
+
+    private static boolean configInitialized = false;
+
+    private BenchmarkFixtures() {
+    }
+
+    /**
+     * Load {@code benchmarkconfig.properties} as the service config. Safe to call from every benchmark state.
+     */
+    public static synchronized void initConfig() {
+        if (configInitialized)
+            return;
+        PropsLoader.initialize(Map.of(
+                "auditconfig", "/benchmarkconfig.properties"
+        ));
+        configInitialized = true;
+    }
+
+    public static @NotNull List<LogDTO> syntheticLogs(int count) {
+        Random random = new Random(SEED);
+        List<LogDTO> logs = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int player = random.nextInt(PLAYERS);
+            LogDTO log = new LogDTO();
+            log.setTimestamp(BASE_TIMESTAMP.plus(i * 50L, ChronoUnit.MILLIS));
+            log.setPlayerUUID(new UUID(SEED, player));
+            log.setPlayerName("Player" + player);
+            log.setActionType(random.nextBoolean() ? LogDTO.ActionType.BLOCK_BREAK : LogDTO.ActionType.BLOCK_PLACE);
+            log.setActionDetailJson("{\"block\":\"" + BLOCKS[random.nextInt(BLOCKS.length)] + "\",\"tool\":\"hand\"}");
+            log.setWorld(WORLDS[random.nextInt(WORLDS.length)]);
+            log.setX(random.nextInt(20_000) - 10_000 + 0.5);
+            log.setY(random.nextInt(320) - 64);
+            log.setZ(random.nextInt(20_000) - 10_000 + 0.5);
+            log.setSource(LogDTO.Source.PLAYER);
+            log.generateLogUUID();
+            logs.add(log);
+        }
+        return logs;
+    }
+
+    /**
+     * @return JSON request body of the logs in the shape game servers post them.
+     */
+    public static @NotNull String toJson(@NotNull LogDTO log) {
+        return "{"
+                + "\"timestamp\":\"" + log.getTimestamp() + "\","
+                + "\"playerUUID\":\"" + log.getPlayerUUID() + "\","
+                + "\"playerName\":\"" + log.getPlayerName() + "\","
+                + "\"actionType\":\"" + log.getActionType() + "\","
+                + "\"actionDetail\":" + log.getActionDetailJson() + ","
+                + "\"world\":\"" + log.getWorld() + "\","
+                + "\"x\":" + log.getX() + ","
+                + "\"y\":" + log.getY() + ","
+                + "\"z\":" + log.getZ() + ","
+                + "\"source\":\"" + log.getSource() + "\""
+                + "}";
+    }
+
+    public static @NotNull String toJsonArray(@NotNull List<LogDTO> logs) {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < logs.size(); i++) {
+            if (i > 0)
+                json.append(',');
+            json.append(toJson(logs.get(i)));
+        }
+        return json.append(']').toString();
+    }
+}
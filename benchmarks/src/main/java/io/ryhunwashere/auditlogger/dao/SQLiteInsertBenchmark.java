@@ -0,0 +1,63 @@
+package io.ryhunwashere.auditlogger.dao;
+
+import io.ryhunwashere.auditlogger.BenchmarkFixtures;
+import io.ryhunwashere.auditlogger.datasource.SQLiteDataSourceFactory;
+import io.ryhunwashere.auditlogger.dto.LogDTO;
+import io.ryhunwashere.auditlogger.util.PropsLoader;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Batch insert into the local fallback DB, on a SQLite file that is recreated for every fork.<br>
+ * The benchmark config points the main DB at an unreachable address, so {@link LogsDAO} starts
+ * without PostgreSQL after a single connection timeout.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 2, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+@State(Scope.Benchmark)
+public class SQLiteInsertBenchmark {
+    @Param({"100", "1000"})
+    public int batchSize;
+
+    private LogsDAO dao;
+    private String fallbackTableName;
+    private List<LogDTO> batch;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        BenchmarkFixtures.initConfig();
+        Path fallbackPath = Path.of(PropsLoader.getConfig("auditconfig").getString("db.fallbackPath"));
+        if (fallbackPath.getParent() != null)
+            Files.createDirectories(fallbackPath.getParent());
+        Files.deleteIfExists(fallbackPath);
+
+        fallbackTableName = PropsLoader.getConfig("auditconfig").getString("db.fallbackLogsTableName");
+        dao = new LogsDAO(PropsLoader.getConfig("auditconfig").getString("db.mainLogsTableName"), fallbackTableName);
+        batch = BenchmarkFixtures.syntheticLogs(batchSize);
+    }
+
+    // Keep every iteration inserting into a table of the same size
+    @Setup(Level.Iteration)
+    public void clearTable() throws SQLException {
+        try (Connection conn = SQLiteDataSourceFactory.getDataSource().getConnection();
+             PreparedStatement stmt = conn.prepareStatement("DELETE FROM " + fallbackTableName)) {
+            stmt.executeUpdate();
+        }
+    }
+
+    @Benchmark
+    public int insertToSQLite() throws SQLException {
+        return dao.insertToSQLite(batch);
+    }
+}
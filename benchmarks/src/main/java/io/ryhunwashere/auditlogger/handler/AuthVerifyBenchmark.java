@@ -0,0 +1,59 @@
+package io.ryhunwashere.auditlogger.handler;
+
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.algorithms.Algorithm;
+import io.ryhunwashere.auditlogger.BenchmarkFixtures;
+import io.ryhunwashere.auditlogger.util.PropsLoader;
+import io.undertow.server.RoutingHandler;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Date;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bearer token verification of {@link AuthHandler}, with & without the verified token cache.<br>
+ * A token without an expiry is never cached, so every call runs the full signature verification.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+@State(Scope.Benchmark)
+public class AuthVerifyBenchmark {
+    private AuthHandler authHandler;
+    private String expiringToken;
+    private String unexpiringToken;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        BenchmarkFixtures.initConfig();
+        String secret = PropsLoader.getConfig("auditconfig").getString("auth.secret");
+        String issuer = PropsLoader.getConfig("auditconfig").getString("auth.issuer");
+        authHandler = new AuthHandler(new RoutingHandler(), secret, issuer, Set.of("/token"));
+
+        Algorithm algorithm = Algorithm.HMAC256(secret);
+        expiringToken = JWT.create()
+                .withIssuer(issuer)
+                .withExpiresAt(new Date(System.currentTimeMillis() + TimeUnit.HOURS.toMillis(1)))
+                .withClaim("role", "mc-server")
+                .sign(algorithm);
+        unexpiringToken = JWT.create()
+                .withIssuer(issuer)
+                .withClaim("role", "mc-server")
+                .sign(algorithm);
+        if (!authHandler.verify(expiringToken) || !authHandler.verify(unexpiringToken))
+            throw new IllegalStateException("Benchmark tokens don't pass verification.");
+    }
+
+    @Benchmark
+    public boolean verifyCached() {
+        return authHandler.verify(expiringToken);
+    }
+
+    @Benchmark
+    public boolean verifyUncached() {
+        return authHandler.verify(unexpiringToken);
+    }
+}
@@ -0,0 +1,53 @@
+package io.ryhunwashere.auditlogger.handler;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import io.ryhunwashere.auditlogger.BenchmarkFixtures;
+import io.ryhunwashere.auditlogger.dto.LogDTO;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Binding of POST /logs bodies through the same mapper & reader {@link LogsHandler} uses.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+@State(Scope.Benchmark)
+public class IngestMapperBenchmark {
+    @Param({"false", "true"})
+    public boolean rawActionDetail;
+
+    @Param({"100"})
+    public int arraySize;
+
+    private ObjectReader reader;
+    private byte[] singleBody;
+    private byte[] arrayBody;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        ObjectMapper mapper = LogsHandler.buildMapper(JsonMapper.builder(), rawActionDetail);
+        reader = mapper.readerFor(LogDTO.class);
+        List<LogDTO> logs = BenchmarkFixtures.syntheticLogs(arraySize);
+        singleBody = BenchmarkFixtures.toJson(logs.getFirst()).getBytes(StandardCharsets.UTF_8);
+        arrayBody = BenchmarkFixtures.toJsonArray(logs).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public List<LogDTO> bindSingleObject() throws IOException {
+        return reader.<LogDTO>readValues(singleBody).readAll();
+    }
+
+    @Benchmark
+    public List<LogDTO> bindArray() throws IOException {
+        return reader.<LogDTO>readValues(arrayBody).readAll();
+    }
+}
@@ -0,0 +1,129 @@
+package io.ryhunwashere.auditlogger.loadgen;
+
+import io.ryhunwashere.auditlogger.dto.LogDTO;
+import io.ryhunwashere.auditlogger.dto.LogDTO.ActionType;
+import io.ryhunwashere.auditlogger.dto.LogDTO.Source;
+import org.jetbrains.annotations.NotNull;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * Synthetic stream of Minecraft server events, shaped like what a busy survival server posts.<br>
+ * Most events come in block break/place bursts of one player digging or building around one spot,
+ * the rest are chat, commands, interactions and joins/quits spread over the online players.
+ * Not thread-safe, every sender thread uses its own instance.
+ */
+class EventMix {
+    private static final String[] WORLDS = {"world", "world", "world", "world_nether", "world_the_end"};
+    private static final String[] BLOCKS = {"minecraft:stone", "minecraft:deepslate", "minecraft:dirt",
+            "minecraft:oak_log", "minecraft:cobblestone", "minecraft:iron_ore", "minecraft:diamond_ore"};
+    private static final String[] WORDS = {"hi", "anyone", "selling", "diamonds", "at", "spawn", "gg", "lag",
+            "where", "base", "trade", "iron", "tp", "me", "pls"};
+    private static final String[] COMMANDS = {"/home", "/spawn", "/tpa", "/msg", "/sethome", "/warp shop"};
+
+    private final Random random;
+    private final int players;
+
+    // Remaining events of the current block burst
+    private int burstLeft;
+    private int burstPlayer;
+    private ActionType burstAction;
+    private String burstWorld;
+    private int burstX, burstY, burstZ;
+
+    EventMix(long seed, int players) {
+        this.random = new Random(seed);
+        this.players = players;
+    }
+
+    @NotNull List<LogDTO> next(int count) {
+        List<LogDTO> logs = new ArrayList<>(count);
+        for (int i = 0; i < count; i++)
+            logs.add(next());
+        return logs;
+    }
+
+    @NotNull LogDTO next() {
+        if (burstLeft > 0)
+            return nextBurstEvent();
+
+        int roll = random.nextInt(100);
+        if (roll < 70) {
+            startBurst();
+            return nextBurstEvent();
+        }
+        int player = random.nextInt(players);
+        if (roll < 85)
+            return event(player, ActionType.CHAT, "{\"message\":\"" + chatMessage() + "\"}", Source.PLAYER);
+        if (roll < 90)
+            return event(player, ActionType.COMMAND,
+                    "{\"command\":\"" + COMMANDS[random.nextInt(COMMANDS.length)] + "\"}", Source.PLAYER);
+        if (roll < 95)
+            return event(player, ActionType.INTERACT,
+                    "{\"block\":\"minecraft:chest\",\"hand\":\"main_hand\"}", Source.PLAYER);
+        return random.nextBoolean()
+                ? event(player, ActionType.JOIN, "{\"address\":\"10.0.0." + (player % 250 + 1) + "\"}", Source.PLAYER)
+                : event(player, ActionType.QUIT, "{\"reason\":\"disconnected\"}", Source.PLAYER);
+    }
+
+    private void startBurst() {
+        burstLeft = 5 + random.nextInt(26);
+        burstPlayer = random.nextInt(players);
+        burstAction = random.nextInt(3) < 2 ? ActionType.BLOCK_BREAK : ActionType.BLOCK_PLACE;
+        burstWorld = WORLDS[random.nextInt(WORLDS.length)];
+        burstX = random.nextInt(20_000) - 10_000;
+        burstY = random.nextInt(120) - 40;
+        burstZ = random.nextInt(20_000) - 10_000;
+    }
+
+    private @NotNull LogDTO nextBurstEvent() {
+        burstLeft--;
+        // Digging or building wanders a few blocks around where the burst started
+        burstX += random.nextInt(3) - 1;
+        burstY += random.nextInt(3) - 1;
+        burstZ += random.nextInt(3) - 1;
+        String detail = "{\"block\":\"" + BLOCKS[random.nextInt(BLOCKS.length)] + "\",\"tool\":\"minecraft:"
+                + (burstAction == ActionType.BLOCK_BREAK ? "diamond_pickaxe" : "air") + "\"}";
+        LogDTO log = event(burstPlayer, burstAction, detail, Source.PLAYER);
+        log.setWorld(burstWorld);
+        log.setX(burstX + 0.5);
+        log.setY(burstY);
+        log.setZ(burstZ + 0.5);
+        return log;
+    }
+
+    private @NotNull LogDTO event(int player, @NotNull ActionType actionType, @NotNull String detailJson,
+                                  @NotNull Source source) {
+        LogDTO log = new LogDTO();
+        log.setTimestamp(Instant.now());
+        log.setPlayerUUID(playerUuid(player));
+        log.setPlayerName("Player" + player);
+        log.setActionType(actionType);
+        log.setActionDetailJson(detailJson);
+        log.setWorld(WORLDS[player % WORLDS.length]);
+        log.setX(random.nextInt(2_000) - 1_000 + 0.5);
+        log.setY(64);
+        log.setZ(random.nextInt(2_000) - 1_000 + 0.5);
+        log.setSource(source);
+        return log;
+    }
+
+    private @NotNull String chatMessage() {
+        int words = 1 + random.nextInt(8);
+        StringBuilder message = new StringBuilder();
+        for (int i = 0; i < words; i++) {
+            if (i > 0)
+                message.append(' ');
+            message.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return message.toString();
+    }
+
+    static @NotNull UUID playerUuid(int player) {
+        return new UUID(0x4c4f4144L, player);
+    }
+}
@@ -0,0 +1,42 @@
+package io.ryhunwashere.auditlogger.loadgen;
+
+import java.util.Arrays;
+
+/**
+ * Collects every latency sample of a run, so percentiles are exact rather than bucketed.
+ * A run records at most a few million samples, which fits comfortably in memory.
+ */
+class LatencyRecorder {
+    private long[] samples = new long[1024];
+    private int count;
+
+    synchronized void record(long nanos) {
+        if (count == samples.length)
+            samples = Arrays.copyOf(samples, count * 2);
+        samples[count++] = nanos;
+    }
+
+    synchronized int count() {
+        return count;
+    }
+
+    /**
+     * @param percentile Between 0 and 100.
+     * @return Latency in nanoseconds at the percentile, 0 without samples.
+     */
+    synchronized long percentile(double percentile) {
+        if (count == 0)
+            return 0L;
+        long[] sorted = Arrays.copyOf(samples, count);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100.0 * count) - 1;
+        return sorted[Math.clamp(index, 0, count - 1)];
+    }
+
+    synchronized long max() {
+        long max = 0L;
+        for (int i = 0; i < count; i++)
+            max = Math.max(max, samples[i]);
+        return max;
+    }
+}
@@ -0,0 +1,298 @@
+package io.ryhunwashere.auditlogger.loadgen;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import io.ryhunwashere.auditlogger.BenchmarkFixtures;
+import io.ryhunwashere.auditlogger.dto.LogDTO;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * End-to-end load generator for a running instance: POST /logs through auth, the ingest queue and
+ * the flush into the main DB.<br>
+ * Requests are sent open-loop at the target rate, and accept latency is measured from the time a request
+ * was scheduled to be sent, so a stalled server shows up in the percentiles instead of slowing the generator.
+ * Flush lag is probed by posting a marker log and polling GET /logs until it's visible.
+ * Run the instance with {@code hotTier.enabled=false}, otherwise the marker is visible before it's flushed.
+ *
+ * <pre>
+ * java -cp benchmarks/target/benchmarks.jar io.ryhunwashere.auditlogger.loadgen.LoadGenerator \
+ *     --url http://localhost:8080 --issuer someone-else --secret VeryStrongSecret42069 \
+ *     --rate 5000 --batch 50 --duration 60 --warmup 10
+ * </pre>
+ */
+public class LoadGenerator {
+    private static final ObjectMapper mapper = JsonMapper.builder().build();
+    private static final long PROBE_POLL_MILLIS = 50L;
+    private static final long PROBE_TIMEOUT_MILLIS = 60_000L;
+
+    private final URI baseUri;
+    private final String issuer;
+    private final String secret;
+    private final int eventsPerSecond;
+    private final int eventsPerRequest;
+    private final long durationNanos;
+    private final long warmupNanos;
+    private final long probeIntervalNanos;
+    private final Semaphore inFlight;
+    private final int players;
+
+    private final HttpClient client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(5))
+            .build();
+    private volatile String token;
+
+    private final LatencyRecorder acceptLatency = new LatencyRecorder();
+    private final LatencyRecorder flushLag = new LatencyRecorder();
+    private final LongAdder sentRequests = new LongAdder();
+    private final LongAdder acceptedRequests = new LongAdder();
+    private final LongAdder acceptedEvents = new LongAdder();
+    private final LongAdder rejectedRequests = new LongAdder();
+    private final LongAdder failedRequests = new LongAdder();
+    private final LongAdder skippedRequests = new LongAdder();
+    private final LongAdder lostProbes = new LongAdder();
+
+    private LoadGenerator(@NotNull Map<String, String> options) {
+        this.baseUri = URI.create(options.getOrDefault("url", "http://localhost:8080"));
+        this.issuer = require(options, "issuer");
+        this.secret = require(options, "secret");
+        this.eventsPerSecond = Integer.parseInt(options.getOrDefault("rate", "1000"));
+        this.eventsPerRequest = Integer.parseInt(options.getOrDefault("batch", "50"));
+        this.durationNanos = TimeUnit.SECONDS.toNanos(Long.parseLong(options.getOrDefault("duration", "60")));
+        this.warmupNanos = TimeUnit.SECONDS.toNanos(Long.parseLong(options.getOrDefault("warmup", "10")));
+        this.probeIntervalNanos = TimeUnit.SECONDS.toNanos(Long.parseLong(options.getOrDefault("probeInterval", "5")));
+        this.inFlight = new Semaphore(Integer.parseInt(options.getOrDefault("maxInFlight", "1000")));
+        this.players = Integer.parseInt(options.getOrDefault("players", "200"));
+        if (eventsPerSecond <= 0 || eventsPerRequest <= 0 || players <= 0)
+            throw new IllegalArgumentException("'rate', 'batch' & 'players' must be positive.");
+    }
+
+    static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (!args[i].startsWith("--"))
+                throw new IllegalArgumentException("Expected an option but got: " + args[i]);
+            options.put(args[i].substring(2), args[i + 1]);
+        }
+        new LoadGenerator(options).run();
+    }
+
+    private void run() throws Exception {
+        refreshToken(null);
+        System.out.println("Token acquired from " + baseUri.resolve("/token"));
+        System.out.println("Target: " + eventsPerSecond + " events/s in requests of " + eventsPerRequest
+                + " events, " + TimeUnit.NANOSECONDS.toSeconds(warmupNanos) + "s warmup + "
+                + TimeUnit.NANOSECONDS.toSeconds(durationNanos) + "s measured.");
+
+        EventMix eventMix = new EventMix(BenchmarkFixtures.SEED, players);
+        long requestIntervalNanos = TimeUnit.SECONDS.toNanos(1) * eventsPerRequest / eventsPerSecond;
+        long startedAt = System.nanoTime();
+        long measureFrom = startedAt + warmupNanos;
+        long endAt = measureFrom + durationNanos;
+        long nextProbeAt = measureFrom;
+        long nextProgressAt = startedAt + TimeUnit.SECONDS.toNanos(10);
+        int probeNumber = 0;
+
+        try (ExecutorService senders = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (long request = 0; ; request++) {
+                long scheduledAt = startedAt + request * requestIntervalNanos;
+                if (scheduledAt >= endAt)
+                    break;
+                long wait = scheduledAt - System.nanoTime();
+                if (wait > 0)
+                    LockSupport.parkNanos(wait);
+
+                boolean measured = scheduledAt >= measureFrom;
+                if (!inFlight.tryAcquire()) {
+                    // The instance can't keep up and the generator refuses to queue unbounded requests
+                    if (measured)
+                        skippedRequests.increment();
+                    continue;
+                }
+                String body = BenchmarkFixtures.toJsonArray(eventMix.next(eventsPerRequest));
+                senders.submit(() -> {
+                    try {
+                        postLogs(body, scheduledAt, measured);
+                    } finally {
+                        inFlight.release();
+                    }
+                });
+
+                long now = System.nanoTime();
+                if (now >= nextProbeAt) {
+                    int number = probeNumber++;
+                    senders.submit(() -> probeFlushLag(number));
+                    nextProbeAt += probeIntervalNanos;
+                }
+                if (now >= nextProgressAt) {
+                    System.out.println("[" + TimeUnit.NANOSECONDS.toSeconds(now - startedAt) + "s] "
+                            + sentRequests.sum() + " requests sent, " + acceptedEvents.sum() + " events accepted, "
+                            + rejectedRequests.sum() + " rejected, " + failedRequests.sum() + " failed");
+                    nextProgressAt += TimeUnit.SECONDS.toNanos(10);
+                }
+            }
+            System.out.println("Waiting for in-flight requests & flush lag probes..");
+        }
+
+        report();
+    }
+
+    private void postLogs(@NotNull String body, long scheduledAt, boolean measured) {
+        String requestToken = token;
+        try {
+            HttpResponse<Void> response = client.send(logsRequest(body, requestToken),
+                    HttpResponse.BodyHandlers.discarding());
+            if (response.statusCode() == 401) {
+                refreshToken(requestToken);
+                response = client.send(logsRequest(body, token), HttpResponse.BodyHandlers.discarding());
+            }
+            long latency = System.nanoTime() - scheduledAt;
+            if (!measured)
+                return;
+            sentRequests.increment();
+            switch (response.statusCode()) {
+                case 202 -> {
+                    acceptedRequests.increment();
+                    acceptedEvents.add(eventsPerRequest);
+                    acceptLatency.record(latency);
+                }
+                case 429, 503 -> rejectedRequests.increment();
+                default -> failedRequests.increment();
+            }
+        } catch (IOException e) {
+            if (measured) {
+                sentRequests.increment();
+                failedRequests.increment();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private @NotNull HttpRequest logsRequest(@NotNull String body, @NotNull String requestToken) {
+        return HttpRequest.newBuilder(baseUri.resolve("/logs"))
+                .header("Authorization", "Bearer " + requestToken)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+    }
+
+    /**
+     * Post one marker log of a dedicated probe player, then poll its logs until the marker shows up.
+     */
+    private void probeFlushLag(int number) {
+        String marker = UUID.randomUUID().toString();
+        UUID probePlayer = EventMix.playerUuid(-1);
+        Instant timestamp = Instant.now();
+        LogDTO probe = new LogDTO();
+        probe.setTimestamp(timestamp);
+        probe.setPlayerUUID(probePlayer);
+        probe.setPlayerName("LoadProbe");
+        probe.setActionType(LogDTO.ActionType.PLUGIN_ACTION);
+        probe.setActionDetailJson("{\"probe\":" + number + ",\"marker\":\"" + marker + "\"}");
+        probe.setWorld("world");
+        probe.setSource(LogDTO.Source.PLUGIN);
+
+        try {
+            HttpResponse<Void> posted = client.send(logsRequest(BenchmarkFixtures.toJson(probe), token),
+                    HttpResponse.BodyHandlers.discarding());
+            if (posted.statusCode() != 202) {
+                lostProbes.increment();
+                return;
+            }
+            long acceptedAt = System.nanoTime();
+            URI query = baseUri.resolve("/logs?player_uuid=" + probePlayer
+                    + "&since=" + encode(timestamp.minusSeconds(1))
+                    + "&until=" + encode(timestamp.plusSeconds(1))
+                    + "&limit=100");
+            while (System.nanoTime() - acceptedAt < TimeUnit.MILLISECONDS.toNanos(PROBE_TIMEOUT_MILLIS)) {
+                HttpResponse<String> response = client.send(HttpRequest.newBuilder(query)
+                                .header("Authorization", "Bearer " + token)
+                                .GET()
+                                .build(),
+                        HttpResponse.BodyHandlers.ofString());
+                if (response.statusCode() == 200 && response.body().contains(marker)) {
+                    flushLag.record(System.nanoTime() - acceptedAt);
+                    return;
+                }
+                Thread.sleep(PROBE_POLL_MILLIS);
+            }
+            lostProbes.increment();
+        } catch (IOException e) {
+            lostProbes.increment();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static @NotNull String encode(@NotNull Instant instant) {
+        return URLEncoder.encode(instant.toString(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Acquire a new token, unless another sender already replaced the expired one.
+     */
+    private synchronized void refreshToken(String expiredToken) throws IOException, InterruptedException {
+        if (token != null && !token.equals(expiredToken))
+            return;
+        String credentials = mapper.writeValueAsString(Map.of("issuer", issuer, "secret", secret));
+        HttpResponse<String> response = client.send(HttpRequest.newBuilder(baseUri.resolve("/token"))
+                        .header("Content-Type", "application/json")
+                        .POST(HttpRequest.BodyPublishers.ofString(credentials))
+                        .build(),
+                HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 200)
+            throw new IllegalStateException("Cannot acquire a token (" + response.statusCode() + "): " + response.body());
+        JsonNode json = mapper.readTree(response.body());
+        token = json.get("token").asText();
+    }
+
+    private void report() {
+        double seconds = durationNanos / 1e9;
+        System.out.println();
+        System.out.println("=== Load generator report ===");
+        System.out.printf("Requests:        %d sent, %d accepted, %d rejected (429/503), %d failed, %d skipped%n",
+                sentRequests.sum(), acceptedRequests.sum(), rejectedRequests.sum(), failedRequests.sum(),
+                skippedRequests.sum());
+        System.out.printf("Throughput:      %.1f events/s accepted (target %d events/s)%n",
+                acceptedEvents.sum() / seconds, eventsPerSecond);
+        System.out.printf("Accept latency:  p50 %s, p99 %s, p999 %s, max %s (%d samples)%n",
+                millis(acceptLatency.percentile(50)), millis(acceptLatency.percentile(99)),
+                millis(acceptLatency.percentile(99.9)), millis(acceptLatency.max()), acceptLatency.count());
+        System.out.printf("Flush lag:       p50 %s, p99 %s, max %s (%d probes, %d lost)%n",
+                millis(flushLag.percentile(50)), millis(flushLag.percentile(99)), millis(flushLag.max()),
+                flushLag.count(), lostProbes.sum());
+    }
+
+    private static @NotNull String millis(long nanos) {
+        return String.format("%.2fms", nanos / 1e6);
+    }
+
+    private static @NotNull String require(@NotNull Map<String, String> options, @NotNull String key) {
+        String value = options.get(key);
+        if (value == null)
+            throw new IllegalArgumentException("Missing '--" + key + "'.");
+        return value;
+    }
+}
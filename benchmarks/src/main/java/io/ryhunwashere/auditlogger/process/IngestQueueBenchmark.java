@@ -0,0 +1,69 @@
+package io.ryhunwashere.auditlogger.process;
+
+import io.ryhunwashere.auditlogger.BenchmarkFixtures;
+import io.ryhunwashere.auditlogger.dto.LogDTO;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Contended enqueue & drain of the {@link IngestQueue} between request handlers and a flush worker.<br>
+ * Producers offer request-sized lists while one consumer drains batches the way {@link LogsManager} does,
+ * without the database write. Spilled logs are dropped.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+@State(Scope.Group)
+public class IngestQueueBenchmark {
+    @Param({"REJECT", "SPILL"})
+    public IngestQueue.OverflowPolicy overflowPolicy;
+
+    @Param({"1", "50"})
+    public int logsPerRequest;
+
+    @Param({"100000"})
+    public int capacity;
+
+    @Param({"1000"})
+    public int batchSize;
+
+    private IngestQueue queue;
+    private List<LogDTO> request;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        queue = new IngestQueue(capacity, overflowPolicy, 0L, spilled -> {
+        });
+        request = BenchmarkFixtures.syntheticLogs(logsPerRequest);
+    }
+
+    @State(Scope.Thread)
+    public static class DrainBatch {
+        final List<LogDTO> batch = new ArrayList<>();
+    }
+
+    @Benchmark
+    @Group("ingest")
+    @GroupThreads(4)
+    public boolean offer() {
+        return queue.offer(request);
+    }
+
+    @Benchmark
+    @Group("ingest")
+    @GroupThreads(1)
+    public int drain(DrainBatch drainBatch) throws InterruptedException {
+        List<LogDTO> batch = drainBatch.batch;
+        batch.clear();
+        LogDTO first = queue.poll(10, TimeUnit.MILLISECONDS);
+        if (first == null)
+            return 0;
+        batch.add(first);
+        return 1 + queue.drainTo(batch, batchSize - 1);
+    }
+}
@@ -0,0 +1,26 @@
+package io.ryhunwashere.auditlogger.util;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing of the {@code since} & {@code until} query parameters.<br>
+ * An ISO-8601 offset date time only parses after the default pattern has failed, so it also pays for the exception.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+@State(Scope.Benchmark)
+public class DateTimeUtilBenchmark {
+    @Param({"2025-01-01T12:34:56", "2025-01-01T12:34:56+07:00"})
+    public String dateTime;
+
+    @Benchmark
+    public Instant stringToInstant() {
+        return DateTimeUtil.stringToInstant(dateTime);
+    }
+}
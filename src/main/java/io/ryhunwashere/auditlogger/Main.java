@@ -1,14 +1,35 @@
 package io.ryhunwashere.auditlogger;
 
+import com.zaxxer.hikari.HikariPoolMXBean;
 import io.ryhunwashere.auditlogger.dao.LogsDAO;
+import io.ryhunwashere.auditlogger.datasource.PGDataSourceFactory;
 import io.ryhunwashere.auditlogger.handler.AuthHandler;
+import io.ryhunwashere.auditlogger.handler.BlockingRouteHandler;
 import io.ryhunwashere.auditlogger.handler.LogsHandler;
+import io.ryhunwashere.auditlogger.handler.MetricsHandler;
+import io.ryhunwashere.auditlogger.handler.RouteMetricsHandler;
+import io.ryhunwashere.auditlogger.handler.StatsHandler;
 import io.ryhunwashere.auditlogger.handler.TokenHandler;
+import io.ryhunwashere.auditlogger.handler.WebSocketIngestHandler;
+import io.ryhunwashere.auditlogger.metrics.Metrics;
 import io.ryhunwashere.auditlogger.process.LogsManager;
+import io.ryhunwashere.auditlogger.util.Config;
 import io.ryhunwashere.auditlogger.util.PropsLoader;
 import io.undertow.Undertow;
+import io.undertow.conduits.GzipStreamSourceConduit;
+import io.undertow.conduits.InflatingStreamSourceConduit;
+import io.undertow.predicate.Predicate;
+import io.undertow.server.HttpHandler;
 import io.undertow.server.RoutingHandler;
+import io.undertow.server.handlers.encoding.ContentEncodingRepository;
+import io.undertow.server.handlers.encoding.DeflateEncodingProvider;
+import io.undertow.server.handlers.encoding.EncodingHandler;
+import io.undertow.server.handlers.encoding.GzipEncodingProvider;
+import io.undertow.server.handlers.encoding.RequestEncodingHandler;
+import io.undertow.util.Headers;
+import org.jetbrains.annotations.NotNull;
 
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ExecutorService;
@@ -17,20 +38,41 @@ import java.util.concurrent.Executors;
 public class Main {
     private static final int DEFAULT_PORT = 8080;
     private static final String DEFAULT_HOST = "0.0.0.0";
+    private static final int DEFAULT_COMPRESSION_LEVEL = 6;
+    private static final long DEFAULT_COMPRESSION_MIN_RESPONSE_BYTES = 1024L;
+    private static final int DEFAULT_QUERY_MAX_CONCURRENT = 16;
+    private static final int DEFAULT_STATS_MAX_CONCURRENT = 4;
+    private static final long DEFAULT_QUEUE_TIMEOUT_MILLIS = 2000L;
     private static Undertow server;
+    private static LogsManager logsManager;
+    // Lives as long as the server: blocking routes & ingest admission run on it
+    private static ExecutorService vtExecutor;
 
     static void main() {
         startServer();
     }
 
     public static void startServer() {
-        try (ExecutorService vtExecutor = Executors.newVirtualThreadPerTaskExecutor()) {
-            initServer(vtExecutor);
-            if (server == null)
-                throw new IllegalStateException("Cannot start server due to server not initialized yet.");
-            server.start();
-            System.out.println("Started on http://" + DEFAULT_HOST + ":" + DEFAULT_PORT + "/");
-        }
+        vtExecutor = Executors.newVirtualThreadPerTaskExecutor();
+        initServer(vtExecutor);
+        if (server == null)
+            throw new IllegalStateException("Cannot start server due to server not initialized yet.");
+        server.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(Main::stopServer, "shutdown"));
+        System.out.println("Started on http://" + DEFAULT_HOST + ":" + DEFAULT_PORT + "/");
+    }
+
+    /**
+     * Stop accepting requests and wait for the ones still running on virtual threads, since ingest admissions
+     * among them may still enqueue logs. Then stop the flush workers, flush what's still queued & close the WAL.
+     */
+    public static void stopServer() {
+        if (server != null)
+            server.stop();
+        if (vtExecutor != null)
+            vtExecutor.close();
+        if (logsManager != null)
+            logsManager.shutdownBatcher();
     }
 
     private static void initServer(ExecutorService vtExecutor) {
@@ -51,22 +93,102 @@ public class Main {
 
         LogsDAO logsDao = new LogsDAO(mainTableName, fallbackTableName);
         int batchSize = PropsLoader.getConfig("auditconfig").getInt("db.logsBatchSize");
-        LogsManager logsManager = new LogsManager(logsDao, vtExecutor, batchSize);
+        logsManager = new LogsManager(logsDao, vtExecutor, batchSize);
         LogsHandler logsHandler = new LogsHandler(logsManager, vtExecutor);
 
+        Config config = PropsLoader.getConfig("auditconfig");
+        boolean metricsEnabled = Boolean.parseBoolean(config.getString("metrics.enabled", "false"));
+        // Queries block on JDBC, so they run on virtual threads with their own concurrency limits.
+        // Ingest & tokens never block the IO thread, so a burst of slow queries can't starve them.
+        HttpHandler queryRoute = new BlockingRouteHandler("GET /logs", logsHandler, vtExecutor,
+                config.getInt("query.maxConcurrent", DEFAULT_QUERY_MAX_CONCURRENT),
+                config.getLong("query.queueTimeoutMillis", DEFAULT_QUEUE_TIMEOUT_MILLIS));
+        HttpHandler statsRoute = new BlockingRouteHandler("GET /stats", new StatsHandler(logsManager), vtExecutor,
+                config.getInt("stats.maxConcurrent", DEFAULT_STATS_MAX_CONCURRENT),
+                config.getLong("stats.queueTimeoutMillis", DEFAULT_QUEUE_TIMEOUT_MILLIS));
         RoutingHandler routes = new RoutingHandler()
-                .get("/logs", logsHandler)
-                .post("/logs", logsHandler)
-                .post("/token", new TokenHandler(secret, issuer, vtExecutor));
-        Set<String> publicRoutes = Set.of("/token");
+                .get("/logs", timed("GET /logs", queryRoute, metricsEnabled))
+                .post("/logs", timed("POST /logs", logsHandler, metricsEnabled))
+                .get("/stats", timed("GET /stats", statsRoute, metricsEnabled))
+                .post("/token", timed("POST /token", new TokenHandler(secret, issuer, vtExecutor), metricsEnabled));
+        if (Boolean.parseBoolean(config.getString("websocket.enabled", "false"))) {
+            // Authenticated once at the upgrade, then streams logs & acks for as long as the connection lives
+            routes.get("/logs/ws", new WebSocketIngestHandler(logsManager, vtExecutor));
+            System.out.println("WebSocket ingest enabled on /logs/ws.");
+        }
+        Set<String> publicRoutes = new HashSet<>(Set.of("/token"));
+        if (metricsEnabled) {
+            routes.get("/metrics", new MetricsHandler());
+            // Prometheus scrapes without a JWT, so only expose metrics publicly on a private network
+            if (Boolean.parseBoolean(config.getString("metrics.public", "false")))
+                publicRoutes.add("/metrics");
+            System.out.println("Metrics enabled on /metrics" + (publicRoutes.contains("/metrics") ? " (public)." : "."));
+        }
         AuthHandler authHandler = new AuthHandler(routes, secret, issuer, publicRoutes);
+        if (metricsEnabled)
+            registerServerMetrics(authHandler, config);
 
         int port = PropsLoader.getConfig("auditconfig").getInt("server.port", DEFAULT_PORT);
         String host = PropsLoader.getConfig("auditconfig").getString("server.host", DEFAULT_HOST);
 
         server = Undertow.builder()
                 .addHttpListener(port, host)
-                .setHandler(authHandler)
+                .setHandler(withCompression(authHandler, PropsLoader.getConfig("auditconfig")))
                 .build();
     }
+
+    private static HttpHandler timed(@NotNull String route, @NotNull HttpHandler handler, boolean metricsEnabled) {
+        return metricsEnabled ? new RouteMetricsHandler(route, handler) : handler;
+    }
+
+    private static void registerServerMetrics(@NotNull AuthHandler authHandler, @NotNull Config config) {
+        Metrics.counter("auditlogger_token_cache_hits_total", "Bearer tokens found in the verified token cache.",
+                authHandler::getTokenCacheHits);
+        Metrics.counter("auditlogger_token_cache_misses_total", "Bearer tokens verified by signature.",
+                authHandler::getTokenCacheMisses);
+        Metrics.gauge("auditlogger_token_cache_size", "Verified tokens in the token cache.",
+                authHandler::getTokenCacheSize);
+
+        HikariPoolMXBean pool = PGDataSourceFactory.getPoolMXBean(config);
+        if (pool == null)
+            return;
+        Metrics.gauge("auditlogger_db_pool_connections", "Main DB pool connections by state.",
+                Metrics.labels("state", "active"), pool::getActiveConnections);
+        Metrics.gauge("auditlogger_db_pool_connections", "Main DB pool connections by state.",
+                Metrics.labels("state", "idle"), pool::getIdleConnections);
+        Metrics.gauge("auditlogger_db_pool_pending_threads", "Threads waiting for a main DB pool connection.",
+                pool::getThreadsAwaitingConnection);
+        int maxPoolSize = config.getInt("dataSource.maximumPoolSize");
+        Metrics.gauge("auditlogger_db_pool_max_connections", "Maximum size of the main DB pool.", () -> maxPoolSize);
+    }
+
+    /**
+     * Decompress gzip & deflate request bodies by their {@code Content-Encoding}, and compress responses
+     * by the {@code Accept-Encoding} of the client if they're larger than {@code compression.minResponseBytes}.
+     * Streamed responses have no known length, so they're always compressed.
+     */
+    private static HttpHandler withCompression(@NotNull HttpHandler next, @NotNull Config config) {
+        if (!Boolean.parseBoolean(config.getString("compression.enabled", "false")))
+            return next;
+
+        int level = config.getInt("compression.level", DEFAULT_COMPRESSION_LEVEL);
+        long minResponseBytes = config.getLong("compression.minResponseBytes", DEFAULT_COMPRESSION_MIN_RESPONSE_BYTES);
+        Predicate largeResponse = exchange -> {
+            // A WebSocket upgrade has no body to compress, only frames after it
+            if (exchange.isUpgrade())
+                return false;
+            String contentLength = exchange.getResponseHeaders().getFirst(Headers.CONTENT_LENGTH);
+            return contentLength == null || Long.parseLong(contentLength) >= minResponseBytes;
+        };
+
+        ContentEncodingRepository encodings = new ContentEncodingRepository()
+                .addEncodingHandler("gzip", new GzipEncodingProvider(level), 100, largeResponse)
+                .addEncodingHandler("deflate", new DeflateEncodingProvider(level), 50, largeResponse);
+        HttpHandler encodingHandler = new EncodingHandler(next, encodings);
+        System.out.println("Compression enabled at level " + level + " for responses from " + minResponseBytes + " bytes.");
+
+        return new RequestEncodingHandler(encodingHandler)
+                .addEncoding("gzip", GzipStreamSourceConduit.WRAPPER)
+                .addEncoding("deflate", InflatingStreamSourceConduit.WRAPPER);
+    }
 }
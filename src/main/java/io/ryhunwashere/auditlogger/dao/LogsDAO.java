@@ -1,7 +1,11 @@
 package io.ryhunwashere.auditlogger.dao;
 
 import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
@@ -9,34 +13,142 @@ import com.fasterxml.jackson.databind.json.JsonMapper;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import io.ryhunwashere.auditlogger.datasource.PGDataSourceFactory;
 import io.ryhunwashere.auditlogger.datasource.SQLiteDataSourceFactory;
+import io.ryhunwashere.auditlogger.dto.LogCursor;
 import io.ryhunwashere.auditlogger.dto.LogDTO;
 import io.ryhunwashere.auditlogger.dto.LogDTO.ActionType;
 import io.ryhunwashere.auditlogger.dto.LogDTO.Source;
+import io.ryhunwashere.auditlogger.dto.StatsQuery;
+import io.ryhunwashere.auditlogger.util.ChunkUtil;
+import io.ryhunwashere.auditlogger.util.Config;
 import io.ryhunwashere.auditlogger.util.DateTimeUtil;
 import io.ryhunwashere.auditlogger.util.IdentifierValidator;
 import io.ryhunwashere.auditlogger.util.PropsLoader;
 import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
-import org.postgresql.util.PGobject;
+import org.jetbrains.annotations.Nullable;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.PGCopyOutputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.sql.DataSource;
+import java.io.IOException;
 import java.sql.*;
+import java.time.DayOfWeek;
 import java.time.Instant;
 import java.time.LocalDate;
 import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.TemporalAdjusters;
 import java.util.*;
 
 public class LogsDAO {
+    /**
+     * How batches are written into the main PostgreSQL table.<br>
+     * {@code BATCH} sends a JDBC batch of parameterized INSERTs.<br>
+     * {@code COPY} streams the batch in binary COPY format into a session-local staging table,
+     * then merges it into the main table with one deduplicating INSERT.
+     */
+    public enum InsertMode {
+        BATCH, COPY
+    }
+
+    /**
+     * How area queries find rows in a partition.<br>
+     * {@code NONE} range-scans the {@code (world, x, y, z)} index.<br>
+     * {@code CHUNK} adds generated {@code chunk_x}/{@code chunk_z} columns with a
+     * {@code (world, chunk_x, chunk_z, ts)} index, so a query only seeks into the chunks it touches.
+     */
+    public enum SpatialIndex {
+        NONE, CHUNK
+    }
+
+    /**
+     * How {@code action_type}, {@code source} & {@code world} are stored in the main PostgreSQL table.<br>
+     * {@code TEXT} stores them as strings.<br>
+     * {@code COMPACT} stores action types & sources as their {@code smallint} codes, and worlds as
+     * {@code smallint} ids of the {@code <table>_worlds} lookup table, which shrinks rows & indexes.
+     * The mode is fixed once the table exists, so switching it needs a new main table name.
+     */
+    public enum SchemaMode {
+        TEXT, COMPACT
+    }
+
+    /**
+     * Time range covered by each partition of the main table.<br>
+     * Monthly partitions keep their original {@code <table>_<year>_<month>} names,
+     * weekly partitions start on Monday.
+     */
+    public enum PartitionGranularity {
+        DAILY, WEEKLY, MONTHLY;
+
+        LocalDate startOf(@NotNull LocalDate date) {
+            return switch (this) {
+                case DAILY -> date;
+                case WEEKLY -> date.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+                case MONTHLY -> date.withDayOfMonth(1);
+            };
+        }
+
+        LocalDate next(@NotNull LocalDate start) {
+            return switch (this) {
+                case DAILY -> start.plusDays(1);
+                case WEEKLY -> start.plusWeeks(1);
+                case MONTHLY -> start.plusMonths(1);
+            };
+        }
+
+        String suffix(@NotNull LocalDate start) {
+            return switch (this) {
+                case DAILY -> "d" + start.format(PARTITION_DATE_FORMAT);
+                case WEEKLY -> "w" + start.format(PARTITION_DATE_FORMAT);
+                case MONTHLY -> start.getYear() + "_" + start.getMonthValue();
+            };
+        }
+    }
+
+    /**
+     * What happens to partitions past the retention window.<br>
+     * {@code DETACH} keeps them as standalone tables for archiving, {@code DROP} deletes them.
+     */
+    public enum RetentionAction {
+        DETACH, DROP
+    }
+
     private static final Logger log = LoggerFactory.getLogger(LogsDAO.class);
     private final String postgresTableName;
     private final String sqliteTableName;
     private final ObjectMapper mapper;
     private final DataSource postgresDataSource;
+    private final InsertMode insertMode;
+    private final SpatialIndex spatialIndex;
+    private final SchemaMode schemaMode;
+    private final WorldDictionary worlds;   // null unless the schema is compact
+    private final RollupDAO rollups;    // null if rollups are disabled
+    private final int replayChunkSize;
+    private final int queryFetchSize;
+    private final boolean rawActionDetail;
+    private final boolean ingestRawActionDetail;
+    private final ZoneId timezone;
+    private final PartitionGranularity partitionGranularity;
+    private final int partitionsAhead;
+    private final int retentionDays;
+    private final RetentionAction retentionAction;
+    private final int rollupRetentionDays;
 
+    private final static TypeReference<Map<String, Object>> ACTION_DETAIL_TYPE = new TypeReference<>() {
+    };
     private final static int MAX_PLAYER_NAME_LENGTH = 15;
-    private final static int CLEANUP_INTERVAL_DAYS = 3;
+    private final static DateTimeFormatter PARTITION_DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy_MM_dd");
+    // Names partitions that only fill the part of a range existing partitions leave uncovered
+    private final static DateTimeFormatter GAP_PARTITION_FORMAT =
+            DateTimeFormatter.ofPattern("yyyy_MM_dd_HHmm").withZone(ZoneOffset.UTC);
+    private final static int DEFAULT_PARTITIONS_AHEAD = 1;
+    private final static int DEFAULT_REPLAY_CHUNK_SIZE = 1000;
+    private final static int DEFAULT_QUERY_FETCH_SIZE = 500;
+    // Past this many chunk columns, a chunk_x range scan is cheaper than one index seek per column
+    private final static int MAX_CHUNK_COLUMN_SEEKS = 64;
 
     public LogsDAO(String postgresTableName, String sqliteTableName) {
         this.mapper = JsonMapper.builder()
@@ -48,6 +160,36 @@ public class LogsDAO {
         this.sqliteTableName = sqliteTableName;
         verifyTableNames();
 
+        String insertModeStr = PropsLoader.getConfig("auditconfig").getString("db.insertMode", "batch");
+        this.insertMode = InsertMode.valueOf(insertModeStr.trim().toUpperCase());
+        System.out.println("Main DB insert mode set to: " + insertMode);
+        String spatialIndexStr = PropsLoader.getConfig("auditconfig").getString("query.spatialIndex", "none");
+        this.spatialIndex = SpatialIndex.valueOf(spatialIndexStr.trim().toUpperCase());
+        String schemaModeStr = PropsLoader.getConfig("auditconfig").getString("db.schema", "text");
+        this.schemaMode = SchemaMode.valueOf(schemaModeStr.trim().toUpperCase());
+        System.out.println("Main DB schema set to: " + schemaMode);
+        this.replayChunkSize = Math.max(1, PropsLoader.getConfig("auditconfig")
+                .getInt("db.replayChunkSize", DEFAULT_REPLAY_CHUNK_SIZE));
+        this.queryFetchSize = Math.max(1, PropsLoader.getConfig("auditconfig")
+                .getInt("query.fetchSize", DEFAULT_QUERY_FETCH_SIZE));
+        this.rawActionDetail = Boolean.parseBoolean(PropsLoader.getConfig("auditconfig")
+                .getString("query.rawActionDetail", "false"));
+        this.ingestRawActionDetail = Boolean.parseBoolean(PropsLoader.getConfig("auditconfig")
+                .getString("ingest.rawActionDetail", "false"));
+
+        Config config = PropsLoader.getConfig("auditconfig");
+        this.timezone = ZoneId.of(config.getString("server.timezone", "UTC"));
+        this.partitionGranularity = PartitionGranularity.valueOf(
+                config.getString("db.partitionGranularity", "monthly").trim().toUpperCase());
+        this.partitionsAhead = Math.max(1, config.getInt("db.partitionsAhead", DEFAULT_PARTITIONS_AHEAD));
+        this.retentionDays = config.getInt("db.retentionDays", 0);
+        this.retentionAction = RetentionAction.valueOf(
+                config.getString("db.retentionAction", "detach").trim().toUpperCase());
+        System.out.println("Partitions: " + partitionGranularity + ", " + partitionsAhead + " ahead, retention "
+                + (retentionDays > 0 ? retentionDays + " days (" + retentionAction + ")" : "disabled"));
+        // Rollups follow the logs they count unless told otherwise
+        this.rollupRetentionDays = config.getInt("rollup.retentionDays", retentionDays);
+
         try {
             Class.forName("org.postgresql.Driver");
         } catch (ClassNotFoundException e) {
@@ -61,9 +203,23 @@ public class LogsDAO {
         }
 
         this.postgresDataSource = PGDataSourceFactory.getDataSource(PropsLoader.getConfig("auditconfig"));
+        this.worlds = schemaMode == SchemaMode.COMPACT
+                ? new WorldDictionary(postgresDataSource, postgresTableName)
+                : null;
+        this.rollups = Boolean.parseBoolean(config.getString("rollup.enabled", "false"))
+                ? new RollupDAO(postgresDataSource, postgresTableName)
+                : null;
         try {
+            if (worlds != null) {
+                worlds.createTable();
+                worlds.load();
+            }
+            if (rollups != null)
+                rollups.createTables();
             createTable(postgresDataSource);
-            createMonthlyPartition();
+            if (spatialIndex == SpatialIndex.CHUNK)
+                addChunkColumns();
+            maintainPartitions();
         } catch (SQLException e) {
             System.err.println("An error occurred when connecting to PostgreSQL database.");
             log.error(e.getMessage());
@@ -71,16 +227,23 @@ public class LogsDAO {
 
         try {
             createTable(SQLiteDataSourceFactory.getDataSource());
+            createReplayStateTable();
         } catch (SQLException e) {
             System.err.println("An error occurred when connecting to SQLite database.");
             log.error(e.getMessage());
         }
     }
 
-    public void createMonthlyPartition() throws SQLException {
-        createPartitionTables(postgresDataSource);
-        createPartitionIndexes(postgresDataSource);
-
+    /**
+     * Create upcoming partitions and apply the retention windows of the logs & their rollups. Safe to call repeatedly.
+     */
+    public final void maintainPartitions() throws SQLException {
+        try (Connection conn = postgresDataSource.getConnection()) {
+            createPartitions(conn);
+            applyRetention(conn);
+            if (rollups != null && rollupRetentionDays > 0)
+                rollups.applyRetention(conn, LocalDate.now(timezone).minusDays(rollupRetentionDays));
+        }
     }
 
     private void verifyTableNames() {
@@ -106,6 +269,59 @@ public class LogsDAO {
                 + "ON CONFLICT (log_uuid, ts) DO NOTHING";
     }
 
+    @Contract(pure = true)
+    private @NotNull String sqlCreateStagingTable() {
+        String codeType = schemaMode == SchemaMode.COMPACT ? "SMALLINT" : "TEXT";
+        return "CREATE TEMP TABLE IF NOT EXISTS " + postgresTableName + "_staging ("
+                + "ts TIMESTAMPTZ NOT NULL, "
+                + "player_uuid UUID NOT NULL, "
+                + "player_name VARCHAR(" + MAX_PLAYER_NAME_LENGTH + ") NOT NULL, "
+                + "action_type " + codeType + " NOT NULL, "
+                + "action_detail JSONB NOT NULL, "
+                + "world " + codeType + " NOT NULL, "
+                + "x DOUBLE PRECISION NOT NULL, "
+                + "y DOUBLE PRECISION NOT NULL, "
+                + "z DOUBLE PRECISION NOT NULL, "
+                + "source " + codeType + " NOT NULL, "
+                + "log_uuid UUID NOT NULL"
+                + ") ON COMMIT DELETE ROWS";
+    }
+
+    @Contract(pure = true)
+    private @NotNull String sqlCopyIntoStaging() {
+        return "COPY " + postgresTableName + "_staging "
+                + "(ts, player_uuid, player_name, action_type, action_detail, world, x, y, z, source, log_uuid) "
+                + "FROM STDIN (FORMAT BINARY)";
+    }
+
+    @Contract(pure = true)
+    private @NotNull String sqlMergeStagingIntoPostgres() {
+        return "INSERT INTO " + postgresTableName
+                + "(ts, player_uuid, player_name, action_type, action_detail, world, x, y, z, source, log_uuid) "
+                + "SELECT ts, player_uuid, player_name, action_type, action_detail, world, x, y, z, source, log_uuid "
+                + "FROM " + postgresTableName + "_staging "
+                + "ON CONFLICT (log_uuid, ts) DO NOTHING"
+                + (rollups != null ? " RETURNING log_uuid" : "");
+    }
+
+    /**
+     * Add the generated chunk columns to the main table. Existing partitions are rewritten once.
+     */
+    private void addChunkColumns() throws SQLException {
+        final String sqlAddChunkX = "ALTER TABLE " + postgresTableName + " "
+                + "ADD COLUMN IF NOT EXISTS chunk_x INTEGER "
+                + "GENERATED ALWAYS AS (floor(x / " + ChunkUtil.CHUNK_SIZE + ")::integer) STORED";
+        final String sqlAddChunkZ = "ALTER TABLE " + postgresTableName + " "
+                + "ADD COLUMN IF NOT EXISTS chunk_z INTEGER "
+                + "GENERATED ALWAYS AS (floor(z / " + ChunkUtil.CHUNK_SIZE + ")::integer) STORED";
+        try (Connection conn = postgresDataSource.getConnection();
+             PreparedStatement addChunkXStmt = conn.prepareStatement(sqlAddChunkX);
+             PreparedStatement addChunkZStmt = conn.prepareStatement(sqlAddChunkZ)) {
+            addChunkXStmt.execute();
+            addChunkZStmt.execute();
+        }
+    }
+
     private void createTable(DataSource dataSource) throws SQLException {
         String sqlCreateTable = getSqlCreateTable(dataSource);
         try (Connection conn = dataSource.getConnection();
@@ -114,51 +330,183 @@ public class LogsDAO {
         }
     }
 
-    private void createPartitionTables(@NotNull DataSource dataSource) throws SQLException {
-        String jdbcUrl = ((com.zaxxer.hikari.HikariDataSource) dataSource).getJdbcUrl();
-        if (!jdbcUrl.startsWith("jdbc:postgresql:")) return;
-
-        ZoneId timezone = ZoneId.of(PropsLoader.getConfig("auditconfig").getString("server.timezone", "UTC"));
-        LocalDate today = LocalDate.now(timezone);
-        LocalDate firstDayOfMonth = today.withDayOfMonth(1);
-        LocalDate firstDayOfNextMonth = today.plusMonths(1).withDayOfMonth(1);
-        LocalDate firstDayOfNextTwoMonths = today.plusMonths(2).withDayOfMonth(1);
+    /**
+     * Range of an existing or planned partition.
+     *
+     * @param lowerLiteral Inclusive lower bound as written in {@code FOR VALUES FROM}.
+     * @param upperLiteral Exclusive upper bound as written in {@code FOR VALUES TO}.
+     */
+    private record PartitionRange(@Nullable String partition, @NotNull String lowerLiteral, double lowerEpoch,
+                                  @NotNull String upperLiteral, double upperEpoch) {
+    }
 
-        final int currentMonthNum = today.getMonthValue();
-        final int partitionYear = currentMonthNum == 12 ? today.getYear() + 1 : today.getYear();
-        final int nextMonthNum = currentMonthNum == 12 ? 1 : currentMonthNum + 1;
+    /**
+     * Create the partition containing today and {@code db.partitionsAhead} partitions after it,
+     * each with its indexes.<br>
+     * Where a range overlaps existing partitions (e.g. after switching granularity), only the parts
+     * of it that no existing partition covers get a partition of their own, so every date keeps a partition.
+     */
+    private void createPartitions(@NotNull Connection conn) throws SQLException {
+        List<PartitionRange> existingRanges = existingPartitionRanges(conn);
+        LocalDate start = partitionGranularity.startOf(LocalDate.now(timezone));
+        double startEpoch = dateEpoch(conn, start);
+        for (int i = 0; i <= partitionsAhead; i++) {
+            LocalDate end = partitionGranularity.next(start);
+            double endEpoch = dateEpoch(conn, end);
+            String partition = postgresTableName + "_" + partitionGranularity.suffix(start);
+            PartitionRange range = new PartitionRange(partition, start.toString(), startEpoch, end.toString(), endEpoch);
 
-        final String sqlCreatePartitionForCurrentMonth =
-                "CREATE TABLE IF NOT EXISTS " + postgresTableName + "_" + partitionYear + "_" + currentMonthNum + " "
-                        + "PARTITION OF " + postgresTableName + " "
-                        + "FOR VALUES FROM ('" + firstDayOfMonth + "') TO ('" + firstDayOfNextMonth + "')";
-        final String sqlCreatePartitionForNextMonth =
-                "CREATE TABLE IF NOT EXISTS " + postgresTableName + "_" + partitionYear + "_" + nextMonthNum + " "
+            for (PartitionRange existing : existingRanges) {
+                // Keeps the indexes of an existing partition in the range up to date, e.g. after enabling chunk indexes
+                if (existing.partition() != null && overlaps(existing, range))
+                    createPartitionIndexes(conn, existing.partition());
+            }
+            for (PartitionRange gap : uncoveredRanges(range, existingRanges)) {
+                String gapPartition = gap.lowerEpoch() == startEpoch && gap.upperEpoch() == endEpoch
+                        ? partition
+                        : postgresTableName + "_g" + GAP_PARTITION_FORMAT.format(Instant.ofEpochSecond((long) gap.lowerEpoch()));
+                final String sqlCreatePartition = "CREATE TABLE IF NOT EXISTS " + gapPartition + " "
                         + "PARTITION OF " + postgresTableName + " "
-                        + "FOR VALUES FROM ('" + firstDayOfNextMonth + "') TO ('" + firstDayOfNextTwoMonths + "')";
-        try (Connection conn = dataSource.getConnection();
-             PreparedStatement stmtCurrentMonthPartition = conn.prepareStatement(sqlCreatePartitionForCurrentMonth);
-             PreparedStatement stmtNextMonthPartition = conn.prepareStatement(sqlCreatePartitionForNextMonth)) {
-            stmtCurrentMonthPartition.execute();
-            stmtNextMonthPartition.execute();
+                        + "FOR VALUES FROM ('" + gap.lowerLiteral() + "') TO ('" + gap.upperLiteral() + "')";
+                try (PreparedStatement stmt = conn.prepareStatement(sqlCreatePartition)) {
+                    stmt.execute();
+                }
+                createPartitionIndexes(conn, gapPartition);
+                existingRanges.add(new PartitionRange(gapPartition, gap.lowerLiteral(), gap.lowerEpoch(),
+                        gap.upperLiteral(), gap.upperEpoch()));
+                if (!gapPartition.equals(partition))
+                    log.warn("Partition {} overlaps existing partitions, created {} for the rest of its range.",
+                            partition, gapPartition);
+            }
+            start = end;
+            startEpoch = endEpoch;
+        }
+    }
+
+    /**
+     * @return Bounds of every range partition of the main table.
+     */
+    private @NotNull List<PartitionRange> existingPartitionRanges(@NotNull Connection conn) throws SQLException {
+        final String sqlSelectBounds = "SELECT partition, lower_bound, upper_bound, "
+                + "extract(epoch FROM lower_bound::timestamptz) AS lower_epoch, "
+                + "extract(epoch FROM upper_bound::timestamptz) AS upper_epoch "
+                + "FROM (SELECT c.relname AS partition, "
+                + "substring(pg_get_expr(c.relpartbound, c.oid) FROM 'FROM \\(''([^'']+)''\\)') AS lower_bound, "
+                + "substring(pg_get_expr(c.relpartbound, c.oid) FROM 'TO \\(''([^'']+)''\\)') AS upper_bound "
+                + "FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid "
+                + "WHERE i.inhparent = ?::regclass) bounds "
+                + "WHERE lower_bound IS NOT NULL AND upper_bound IS NOT NULL";
+        List<PartitionRange> ranges = new ArrayList<>();
+        try (PreparedStatement stmt = conn.prepareStatement(sqlSelectBounds)) {
+            stmt.setString(1, postgresTableName);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next())
+                    ranges.add(new PartitionRange(rs.getString("partition"),
+                            rs.getString("lower_bound"), rs.getDouble("lower_epoch"),
+                            rs.getString("upper_bound"), rs.getDouble("upper_epoch")));
+            }
+        }
+        return ranges;
+    }
+
+    /**
+     * @return Epoch seconds of the start of the date, as Postgres reads a date literal in a partition bound.
+     */
+    private static double dateEpoch(@NotNull Connection conn, @NotNull LocalDate date) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT extract(epoch FROM ?::date::timestamptz)")) {
+            stmt.setString(1, date.toString());
+            try (ResultSet rs = stmt.executeQuery()) {
+                rs.next();
+                return rs.getDouble(1);
+            }
+        }
+    }
+
+    private static boolean overlaps(@NotNull PartitionRange a, @NotNull PartitionRange b) {
+        return a.lowerEpoch() < b.upperEpoch() && b.lowerEpoch() < a.upperEpoch();
+    }
+
+    /**
+     * @return Parts of the range no existing partition covers, bounded by the range itself or by the
+     * bounds of the existing partitions next to them.
+     */
+    private static @NotNull List<PartitionRange> uncoveredRanges(@NotNull PartitionRange range,
+                                                                 @NotNull List<PartitionRange> existingRanges) {
+        List<PartitionRange> overlapping = new ArrayList<>();
+        for (PartitionRange existing : existingRanges) {
+            if (overlaps(existing, range))
+                overlapping.add(existing);
+        }
+        overlapping.sort(Comparator.comparingDouble(PartitionRange::lowerEpoch));
+
+        List<PartitionRange> gaps = new ArrayList<>();
+        String lowerLiteral = range.lowerLiteral();
+        double lowerEpoch = range.lowerEpoch();
+        for (PartitionRange existing : overlapping) {
+            if (existing.lowerEpoch() > lowerEpoch)
+                gaps.add(new PartitionRange(null, lowerLiteral, lowerEpoch,
+                        existing.lowerLiteral(), existing.lowerEpoch()));
+            if (existing.upperEpoch() > lowerEpoch) {
+                lowerLiteral = existing.upperLiteral();
+                lowerEpoch = existing.upperEpoch();
+            }
+        }
+        if (lowerEpoch < range.upperEpoch())
+            gaps.add(new PartitionRange(null, lowerLiteral, lowerEpoch, range.upperLiteral(), range.upperEpoch()));
+        return gaps;
+    }
+
+    /**
+     * Detach every partition whose range ended before the retention window, and drop it unless
+     * {@code db.retentionAction} is {@code detach}, which keeps it as a standalone archive table.
+     */
+    private void applyRetention(@NotNull Connection conn) throws SQLException {
+        if (retentionDays <= 0)
+            return;
+
+        LocalDate cutoff = LocalDate.now(timezone).minusDays(retentionDays);
+        final String sqlSelectExpired = "SELECT c.relname AS partition "
+                + "FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid "
+                + "WHERE i.inhparent = ?::regclass "
+                + "AND substring(pg_get_expr(c.relpartbound, c.oid) FROM 'TO \\(''([^'']+)''\\)')::timestamptz "
+                + "<= ?::date::timestamptz";
+        List<String> expiredPartitions = new ArrayList<>();
+        try (PreparedStatement stmt = conn.prepareStatement(sqlSelectExpired)) {
+            stmt.setString(1, postgresTableName);
+            stmt.setString(2, cutoff.toString());
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next())
+                    expiredPartitions.add(rs.getString("partition"));
+            }
+        }
+
+        for (String partition : expiredPartitions) {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("ALTER TABLE " + postgresTableName + " DETACH PARTITION " + partition);
+                if (retentionAction == RetentionAction.DROP)
+                    stmt.execute("DROP TABLE " + partition);
+            }
+            System.out.println((retentionAction == RetentionAction.DROP ? "Dropped" : "Detached")
+                    + " expired partition: " + partition);
         }
     }
 
     private @NotNull String getSqlCreateTable(DataSource dataSource) {
         String jdbcUrl = ((com.zaxxer.hikari.HikariDataSource) dataSource).getJdbcUrl();
         if (jdbcUrl.startsWith("jdbc:postgresql:")) {
+            String codeType = schemaMode == SchemaMode.COMPACT ? "SMALLINT" : "TEXT";
             return "CREATE TABLE IF NOT EXISTS " + postgresTableName + " ("
                     + "id BIGINT GENERATED ALWAYS AS IDENTITY, "
                     + "ts TIMESTAMPTZ NOT NULL, "
                     + "player_uuid UUID NOT NULL, "
                     + "player_name VARCHAR(" + MAX_PLAYER_NAME_LENGTH + ") NOT NULL, "
-                    + "action_type TEXT NOT NULL, "
+                    + "action_type " + codeType + " NOT NULL, "
                     + "action_detail JSONB NOT NULL, "
-                    + "world TEXT NOT NULL, "
+                    + "world " + codeType + " NOT NULL, "
                     + "x DOUBLE PRECISION NOT NULL, "
                     + "y DOUBLE PRECISION NOT NULL, "
                     + "z DOUBLE PRECISION NOT NULL, "
-                    + "source TEXT NOT NULL, "
+                    + "source " + codeType + " NOT NULL, "
                     + "log_uuid UUID NOT NULL, "
                     + "PRIMARY KEY (ts, id), "
                     + "UNIQUE (log_uuid, ts)"
@@ -184,65 +532,73 @@ public class LogsDAO {
         throw new IllegalArgumentException("Unsupported DataSource type: " + dataSource.getClass().getName());
     }
 
-    private void createPartitionIndexes(DataSource dataSource) throws SQLException {
-        String jdbcUrl = ((com.zaxxer.hikari.HikariDataSource) dataSource).getJdbcUrl();
-        if (!jdbcUrl.startsWith("jdbc:postgresql:")) return;
-
-        ZoneId timezone = ZoneId.of(PropsLoader.getConfig("auditconfig").getString("server.timezone", "UTC"));
-        LocalDate today = LocalDate.now(timezone);
-
-        int currentMonthNum = today.getMonthValue();
-        int nextMonthNum = currentMonthNum == 12 ? 1 : currentMonthNum + 1;
-        int currentYear = today.getYear();
-        int nextYear = currentMonthNum == 12 ? currentYear + 1 : currentYear;
-
-        String[] partitions = {
-                postgresTableName + "_" + currentYear + "_" + currentMonthNum,
-                postgresTableName + "_" + nextYear + "_" + nextMonthNum
-        };
-
-        try (Connection conn = dataSource.getConnection()) {
-            for (String partition : partitions) {
-                String playerUuidIdx = "CREATE INDEX IF NOT EXISTS idx_" + partition + "_player_uuid " +
-                        "ON " + partition + "(player_uuid)";
-                try (PreparedStatement stmt = conn.prepareStatement(playerUuidIdx)) {
-                    stmt.execute();
-                }
-
-                String locationIdx = "CREATE INDEX IF NOT EXISTS idx_" + partition + "_world_xyz " +
-                        "ON " + partition + "(world, x, y, z)";
-                try (PreparedStatement stmt = conn.prepareStatement(locationIdx)) {
-                    stmt.execute();
-                }
+    private void createPartitionIndexes(@NotNull Connection conn, @NotNull String partition) throws SQLException {
+        // Also serves keyset pagination of a player's logs in (ts, id) order
+        String playerUuidIdx = "CREATE INDEX IF NOT EXISTS idx_" + partition + "_player_ts_id " +
+                "ON " + partition + "(player_uuid, ts, id)";
+        try (PreparedStatement stmt = conn.prepareStatement(playerUuidIdx)) {
+            stmt.execute();
+        }
 
-                String actionTypeIdx = "CREATE INDEX IF NOT EXISTS idx_" + partition + "_action_type " +
-                        "ON " + partition + "(action_type)";
-                try (PreparedStatement stmt = conn.prepareStatement(actionTypeIdx)) {
-                    stmt.execute();
-                }
+        String locationIdx = "CREATE INDEX IF NOT EXISTS idx_" + partition + "_world_xyz " +
+                "ON " + partition + "(world, x, y, z)";
+        try (PreparedStatement stmt = conn.prepareStatement(locationIdx)) {
+            stmt.execute();
+        }
 
-                String actionDetailGinIdx = "CREATE INDEX IF NOT EXISTS idx_" + partition + "_action_detail_gin " +
-                        "ON " + partition + " USING gin (action_detail)";
-                try (PreparedStatement stmt = conn.prepareStatement(actionDetailGinIdx)) {
-                    stmt.execute();
-                }
+        if (spatialIndex == SpatialIndex.CHUNK) {
+            String chunkIdx = "CREATE INDEX IF NOT EXISTS idx_" + partition + "_world_chunk " +
+                    "ON " + partition + "(world, chunk_x, chunk_z, ts)";
+            try (PreparedStatement stmt = conn.prepareStatement(chunkIdx)) {
+                stmt.execute();
             }
         }
+
+        String actionTypeIdx = "CREATE INDEX IF NOT EXISTS idx_" + partition + "_action_type " +
+                "ON " + partition + "(action_type)";
+        try (PreparedStatement stmt = conn.prepareStatement(actionTypeIdx)) {
+            stmt.execute();
+        }
+
+        String actionDetailGinIdx = "CREATE INDEX IF NOT EXISTS idx_" + partition + "_action_detail_gin " +
+                "ON " + partition + " USING gin (action_detail)";
+        try (PreparedStatement stmt = conn.prepareStatement(actionDetailGinIdx)) {
+            stmt.execute();
+        }
+
+        // Rows arrive in ts order, so a tiny BRIN index is enough for time range scans
+        String tsBrinIdx = "CREATE INDEX IF NOT EXISTS idx_" + partition + "_ts_brin " +
+                "ON " + partition + " USING brin (ts)";
+        try (PreparedStatement stmt = conn.prepareStatement(tsBrinIdx)) {
+            stmt.execute();
+        }
     }
 
     public int insertToPostgres(@NotNull List<LogDTO> batch) throws SQLException {
-        int[] insertStatements = null;
+        if (insertMode == InsertMode.COPY)
+            return copyToPostgres(batch);
+
+        if (worlds != null)
+            worlds.register(batch);
+
+        int[] insertStatements;
         try (Connection conn = postgresDataSource.getConnection()) {
             conn.setAutoCommit(false);
             try (PreparedStatement stmt = conn.prepareStatement(sqlInsertIntoPostgres())) {
                 insertStatements = insertBatchToPostgres(stmt, batch);
+                if (rollups != null)
+                    rollups.addInsertedLogs(conn, insertedLogs(batch, insertStatements));
                 conn.commit();
-            } catch (SQLException | JsonProcessingException e) {
+            } catch (SQLException e) {
+                // Rethrow so the calling flush worker can fall back with its own batch
                 conn.rollback();
-                e.printStackTrace();
+                throw e;
+            } catch (JsonProcessingException e) {
+                conn.rollback();
+                throw new SQLException("Cannot serialize action detail of a log in the batch.", e);
             }
         }
-        return insertStatements != null ? insertStatements.length : 0;
+        return insertStatements.length;
     }
 
     private int[] insertBatchToPostgres(PreparedStatement stmt, @NotNull List<LogDTO> logDTOList)
@@ -251,23 +607,148 @@ public class LogsDAO {
             stmt.setTimestamp(1, Timestamp.from(log.getTimestamp()));
             stmt.setObject(2, log.getPlayerUUID());
             stmt.setString(3, log.getPlayerName());
-            stmt.setString(4, log.getActionType().toString().toLowerCase());
-            String json = mapper.writeValueAsString(log.getActionDetail());
-            PGobject jsonObj = new PGobject();
-            jsonObj.setType("jsonb");
-            jsonObj.setValue(json);
-            stmt.setObject(5, jsonObj);
-            stmt.setString(6, log.getWorld());
+            // Sent untyped, so the server parses it straight into the jsonb column
+            stmt.setObject(5, actionDetailJson(log), Types.OTHER);
+            if (schemaMode == SchemaMode.COMPACT) {
+                stmt.setShort(4, log.getActionType().code());
+                stmt.setShort(6, worlds.idOf(log.getWorld()));
+                stmt.setShort(10, log.getSource().code());
+            } else {
+                stmt.setString(4, log.getActionType().toString().toLowerCase());
+                stmt.setString(6, log.getWorld());
+                stmt.setString(10, log.getSource().toString().toLowerCase());
+            }
             stmt.setDouble(7, log.getX());
             stmt.setDouble(8, log.getY());
             stmt.setDouble(9, log.getZ());
-            stmt.setString(10, log.getSource().toString().toLowerCase());
             stmt.setObject(11, log.getLogUUID());
             stmt.addBatch();
         }
         return stmt.executeBatch();
     }
 
+    private int copyToPostgres(@NotNull List<LogDTO> batch) throws SQLException {
+        if (worlds != null)
+            worlds.register(batch);
+
+        int mergedRows;
+        try (Connection conn = postgresDataSource.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                mergedRows = copyBatchToPostgres(conn, batch);
+                conn.commit();
+            } catch (JsonProcessingException e) {
+                conn.rollback();
+                throw new SQLException("Cannot serialize action detail of a log in the batch.", e);
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } catch (IOException e) {
+                // PGCopyOutputStream reports server & connection errors as IOException
+                conn.rollback();
+                throw new SQLException("COPY into staging table failed.", e);
+            }
+        }
+        return mergedRows;
+    }
+
+    /**
+     * Streams the batch into the staging table with binary COPY, then merges it into the main table.<br>
+     * The staging table is a temporary table created with {@code ON COMMIT DELETE ROWS},
+     * so it is unlogged, private to the pooled connection and emptied by the surrounding commit.
+     *
+     * @return Number of rows actually merged into the main table (duplicates are skipped).
+     */
+    private int copyBatchToPostgres(@NotNull Connection conn, @NotNull List<LogDTO> logDTOList)
+            throws SQLException, IOException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute(sqlCreateStagingTable());
+        }
+
+        PGConnection pgConn = conn.unwrap(PGConnection.class);
+        try (PgBinaryCopyWriter writer = new PgBinaryCopyWriter(new PGCopyOutputStream(pgConn, sqlCopyIntoStaging()))) {
+            for (LogDTO log : logDTOList) {
+                writer.startRow(11);
+                writer.writeTimestamp(log.getTimestamp());
+                writer.writeUUID(log.getPlayerUUID());
+                writer.writeText(log.getPlayerName());
+                if (schemaMode == SchemaMode.COMPACT)
+                    writer.writeSmallint(log.getActionType().code());
+                else
+                    writer.writeText(log.getActionType().toString().toLowerCase());
+                writer.writeJsonb(actionDetailJson(log));
+                if (schemaMode == SchemaMode.COMPACT)
+                    writer.writeSmallint(worlds.idOf(log.getWorld()));
+                else
+                    writer.writeText(log.getWorld());
+                writer.writeDouble(log.getX());
+                writer.writeDouble(log.getY());
+                writer.writeDouble(log.getZ());
+                if (schemaMode == SchemaMode.COMPACT)
+                    writer.writeSmallint(log.getSource().code());
+                else
+                    writer.writeText(log.getSource().toString().toLowerCase());
+                writer.writeUUID(log.getLogUUID());
+            }
+            writer.finish();
+        }
+
+        if (rollups == null) {
+            try (PreparedStatement stmt = conn.prepareStatement(sqlMergeStagingIntoPostgres())) {
+                return stmt.executeUpdate();
+            }
+        }
+
+        // Only rows that weren't duplicates are counted by the rollups
+        Set<UUID> mergedLogUUIDs = new HashSet<>();
+        try (PreparedStatement stmt = conn.prepareStatement(sqlMergeStagingIntoPostgres());
+             ResultSet rs = stmt.executeQuery()) {
+            while (rs.next())
+                mergedLogUUIDs.add(rs.getObject("log_uuid", UUID.class));
+        }
+        List<LogDTO> mergedLogs = new ArrayList<>(mergedLogUUIDs.size());
+        for (LogDTO log : logDTOList) {
+            if (mergedLogUUIDs.contains(log.getLogUUID()))
+                mergedLogs.add(log);
+        }
+        rollups.addInsertedLogs(conn, mergedLogs);
+        return mergedLogUUIDs.size();
+    }
+
+    /**
+     * @param updateCounts Result of the batch, 0 for a row skipped by {@code ON CONFLICT}.
+     * @return Logs whose rows were inserted. If the driver doesn't report a row count, the row is assumed inserted.
+     */
+    private static @NotNull List<LogDTO> insertedLogs(@NotNull List<LogDTO> batch, int @NotNull [] updateCounts) {
+        List<LogDTO> inserted = new ArrayList<>(batch.size());
+        for (int i = 0; i < batch.size() && i < updateCounts.length; i++) {
+            if (updateCounts[i] != 0)
+                inserted.add(batch.get(i));
+        }
+        return inserted;
+    }
+
+    public boolean hasRollups() {
+        return rollups != null;
+    }
+
+    /**
+     * @throws IllegalStateException If rollups are disabled.
+     */
+    public @NotNull List<Map<String, Object>> getStats(@NotNull StatsQuery query) throws SQLException {
+        if (rollups == null)
+            throw new IllegalStateException("Rollups are disabled.");
+        return rollups.getStats(query);
+    }
+
+    /**
+     * @return JSON of the action detail, as received if it was bound as raw JSON.
+     */
+    private @NotNull String actionDetailJson(@NotNull LogDTO log) throws JsonProcessingException {
+        String json = log.getActionDetailJson();
+        return json != null ? json : mapper.writeValueAsString(log.getActionDetail());
+    }
+
     public int insertToSQLite(@NotNull List<LogDTO> batch) throws SQLException {
         String sql = "INSERT INTO " + sqliteTableName + " "
                 + "(ts, player_uuid, player_name, action_type, action_detail, world, x, y, z, source, log_uuid) "
@@ -280,13 +761,13 @@ public class LogsDAO {
                 insertedRows = insertBatchToSQLite(stmt, batch);
                 conn.commit();
             } catch (SQLException e) {
+                // Rethrow so the caller knows the batch isn't stored anywhere
                 conn.rollback();
-                insertedRows = null;
-                e.printStackTrace();
+                throw e;
             }
         }
 
-        return insertedRows != null ? insertedRows.length : 0;
+        return insertedRows.length;
     }
 
     private int[] insertBatchToSQLite(PreparedStatement stmt, @NotNull List<LogDTO> logDTOList) throws SQLException {
@@ -296,10 +777,9 @@ public class LogsDAO {
             stmt.setString(3, log.getPlayerName());
             stmt.setString(4, log.getActionType().toString().toLowerCase());
             try {
-                String actionDetailJson = mapper.writeValueAsString(log.getActionDetail());
-                stmt.setString(5, actionDetailJson);
+                stmt.setString(5, actionDetailJson(log));
             } catch (JsonProcessingException e) {
-                System.err.println(e.getMessage());
+                throw new SQLException("Cannot serialize action detail of a log in the batch.", e);
             }
             stmt.setString(6, log.getWorld());
             stmt.setDouble(7, log.getX());
@@ -324,119 +804,187 @@ public class LogsDAO {
         return localRowsCount;
     }
 
-    public void flushLocalToMainDB() throws SQLException {
+    private void createReplayStateTable() throws SQLException {
+        final String sqlCreateTable = "CREATE TABLE IF NOT EXISTS " + sqliteTableName + "_replay_state ("
+                + "id INTEGER PRIMARY KEY CHECK (id = 1), "
+                + "high_water_mark INTEGER NOT NULL"
+                + ")";
+        final String sqlInitState = "INSERT OR IGNORE INTO " + sqliteTableName + "_replay_state "
+                + "(id, high_water_mark) VALUES (1, 0)";
+        // SQLite compiles a statement when it's prepared, so the insert can only be prepared once the table exists
+        try (Connection conn = SQLiteDataSourceFactory.getDataSource().getConnection()) {
+            try (PreparedStatement createTableStmt = conn.prepareStatement(sqlCreateTable)) {
+                createTableStmt.execute();
+            }
+            try (PreparedStatement initStateStmt = conn.prepareStatement(sqlInitState)) {
+                initStateStmt.execute();
+            }
+        }
+    }
+
+    /**
+     * Replay the local fallback DB into the main DB in chunks of {@code db.replayChunkSize} rows.<br>
+     * Every chunk is read by rowid above the persisted high-water mark, committed into PostgreSQL,
+     * then deleted from SQLite while the high-water mark advances in the same SQLite transaction.
+     * Memory use is bounded by the chunk size, and a restart resumes from the last replayed chunk.
+     * A chunk that was committed to PostgreSQL but not yet deleted locally is deduplicated by
+     * {@code ON CONFLICT (log_uuid, ts)} when it's replayed again.
+     *
+     * @return Number of rows replayed into the main DB.
+     */
+    public int flushLocalToMainDB() throws SQLException {
+        int replayedRows = 0;
+        long highWaterMark = getReplayHighWaterMark();
+        while (true) {
+            List<LogDTO> logDTOList = new ArrayList<>(replayChunkSize);
+            long chunkLastId = selectReplayChunk(highWaterMark, logDTOList);
+            if (chunkLastId <= highWaterMark)
+                break;
+
+            if (!logDTOList.isEmpty())
+                insertToPostgres(logDTOList);
+            highWaterMark = deleteReplayedChunk(chunkLastId);
+            replayedRows += logDTOList.size();
+        }
+        return replayedRows;
+    }
+
+    private long getReplayHighWaterMark() throws SQLException {
+        final String sql = "SELECT high_water_mark FROM " + sqliteTableName + "_replay_state WHERE id = 1";
+        try (Connection conn = SQLiteDataSourceFactory.getDataSource().getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql);
+             ResultSet rs = stmt.executeQuery()) {
+            return rs.next() ? rs.getLong("high_water_mark") : 0L;
+        }
+    }
+
+    /**
+     * Read the next chunk of local rows after the given rowid into {@code logDTOList}.
+     *
+     * @return The last rowid of the chunk, or {@code afterId} if there are no more rows.
+     */
+    private long selectReplayChunk(long afterId, @NotNull List<LogDTO> logDTOList) throws SQLException {
+        final String sqlSelectChunk = "SELECT id, ts, player_uuid, player_name, action_type, action_detail, "
+                + "world, x, y, z, source, log_uuid FROM " + sqliteTableName + " "
+                + "WHERE id > ? ORDER BY id LIMIT ?";
+        long lastId = afterId;
         try (Connection sqliteConn = SQLiteDataSourceFactory.getDataSource().getConnection();
-             Connection postgresConn = postgresDataSource.getConnection()) {
-            sqliteConn.setAutoCommit(false);
-            postgresConn.setAutoCommit(false);
-            try {
-                // Cleanup transferred rows in SQLite if there's any
-                List<UUID> logUUIDList = new ArrayList<>();
-                final String sqlSelectLastThreeDays = "SELECT log_uuid FROM " + postgresTableName + " "
-                        + "WHERE ts >= NOW() - INTERVAL '" + CLEANUP_INTERVAL_DAYS + " days'";
-                try (PreparedStatement stmt = postgresConn.prepareStatement(sqlSelectLastThreeDays);
-                     ResultSet rs = stmt.executeQuery()) {
-                    while (rs.next()) {
-                        UUID logUUID = rs.getObject("log_uuid", UUID.class);
-                        logUUIDList.add(logUUID);
+             PreparedStatement stmt = sqliteConn.prepareStatement(sqlSelectChunk)) {
+            stmt.setLong(1, afterId);
+            stmt.setInt(2, replayChunkSize);
+            try (ResultSet localResultSet = stmt.executeQuery()) {
+                while (localResultSet.next()) {
+                    lastId = localResultSet.getLong("id");
+                    try {
+                        logDTOList.add(readLocalRow(localResultSet));
+                    } catch (JsonProcessingException | IllegalArgumentException e) {
+                        // A row that can't be parsed would block the replay forever, so it's skipped
+                        log.error("Skipping unreadable fallback row {}: {}", lastId, e.getMessage());
                     }
                 }
+            }
+        }
+        return lastId;
+    }
 
-                final String sqlDeleteTransferredLogs = "DELETE FROM " + sqliteTableName + " WHERE log_uuid = ?";
-                try (PreparedStatement stmt = sqliteConn.prepareStatement(sqlDeleteTransferredLogs)) {
-                    for (UUID logUUID : logUUIDList) {
-                        stmt.setString(1, logUUID.toString());
-                        stmt.addBatch();
-                    }
-                    stmt.executeBatch();
-                }
-                sqliteConn.commit();
+    private @NotNull LogDTO readLocalRow(@NotNull ResultSet localResultSet) throws SQLException, JsonProcessingException {
+        Instant ts = DateTimeUtil.stringToInstant(
+                localResultSet.getString("ts"));
+        UUID playerUUID = UUID.fromString(localResultSet.getString("player_uuid"));
+        String playerName = localResultSet.getString("player_name");
+        ActionType actionType = ActionType.valueOf(
+                localResultSet.getString("action_type").toUpperCase());
 
-                List<LogDTO> logDTOList = new ArrayList<>();
-                final String sqlSelectAllLocalRows = "SELECT ts, player_uuid, player_name, action_type, action_detail, "
-                        + "world, x, y, z, source, log_uuid FROM " + sqliteTableName;
-                try (PreparedStatement stmt = sqliteConn.prepareStatement(sqlSelectAllLocalRows);
-                     ResultSet localResultSet = stmt.executeQuery()) {
-                    while (localResultSet.next()) {
-                        Instant ts = DateTimeUtil.stringToInstant(
-                                localResultSet.getString("ts"));
-                        UUID playerUUID = UUID.fromString(localResultSet.getString("player_uuid"));
-                        String playerName = localResultSet.getString("player_name");
-                        ActionType actionType = ActionType.valueOf(
-                                localResultSet.getString("action_type").toUpperCase());
-
-                        // Potentially throws JsonParseException
-                        String json = localResultSet.getString("action_detail");
-                        Map<String, Object> actionDetail = mapper.readValue(json, new TypeReference<>() {
-                        });
-
-                        String world = localResultSet.getString("world");
-                        double x = localResultSet.getDouble("x");
-                        double y = localResultSet.getDouble("y");
-                        double z = localResultSet.getDouble("z");
-                        Source source = Source.valueOf(localResultSet.getString("source").toUpperCase());
-                        UUID logUUID = UUID.fromString(localResultSet.getString("log_uuid"));
-
-                        LogDTO log = new LogDTO();
-                        log.setTimestamp(ts);
-                        log.setPlayerUUID(playerUUID);
-                        log.setPlayerName(playerName);
-                        log.setActionType(actionType);
-                        log.setActionDetail(actionDetail);
-                        log.setWorld(world);
-                        log.setX(x);
-                        log.setY(y);
-                        log.setZ(z);
-                        log.setSource(source);
-                        log.setLogUUID(logUUID);
-
-                        logDTOList.add(log);
-                    }
-                } catch (SQLException | JsonProcessingException e) {
-                    e.printStackTrace();
-                }
+        String json = localResultSet.getString("action_detail");
 
-                // Insert from logDTOList into Postgres
-                try (PreparedStatement stmt = postgresConn.prepareStatement(sqlInsertIntoPostgres())) {
-                    insertBatchToPostgres(stmt, logDTOList);
-                } catch (SQLException | JsonProcessingException e) {
-                    e.printStackTrace();
-                }
-                postgresConn.commit();
+        String world = localResultSet.getString("world");
+        double x = localResultSet.getDouble("x");
+        double y = localResultSet.getDouble("y");
+        double z = localResultSet.getDouble("z");
+        Source source = Source.valueOf(localResultSet.getString("source").toUpperCase());
+        UUID logUUID = UUID.fromString(localResultSet.getString("log_uuid"));
+
+        LogDTO log = new LogDTO();
+        log.setTimestamp(ts);
+        log.setPlayerUUID(playerUUID);
+        log.setPlayerName(playerName);
+        log.setActionType(actionType);
+        // Both potentially throw JsonParseException
+        if (ingestRawActionDetail) {
+            // Stored from a validated object, so it's passed on to the main DB as is
+            verifyJsonObject(json);
+            log.setActionDetailJson(json);
+        } else {
+            log.setActionDetail(mapper.readValue(json, ACTION_DETAIL_TYPE));
+        }
+        log.setWorld(world);
+        log.setX(x);
+        log.setY(y);
+        log.setZ(z);
+        log.setSource(source);
+        log.setLogUUID(logUUID);
+        return log;
+    }
+
+    /**
+     * Check that the text is a single JSON object by walking its tokens, without materializing it,
+     * so a corrupted row is still skipped instead of failing its whole replay chunk in the main DB.
+     */
+    private void verifyJsonObject(@NotNull String json) throws JsonProcessingException {
+        try (JsonParser parser = mapper.getFactory().createParser(json)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT)
+                throw new JsonParseException(parser, "Action detail is not a JSON object.");
+            parser.skipChildren();
+            if (parser.nextToken() != null)
+                throw new JsonParseException(parser, "Trailing content after the action detail.");
+        } catch (JsonProcessingException e) {
+            throw e;
+        } catch (IOException e) {
+            // Parsing a String never does actual I/O
+            throw new IllegalArgumentException(e);
+        }
+    }
 
+    /**
+     * Delete replayed rows up to {@code lastId} and persist the new high-water mark in one transaction.
+     * Once the table is empty, SQLite may hand out rowids from 1 again, so the mark is reset to 0.
+     *
+     * @return The persisted high-water mark.
+     */
+    private long deleteReplayedChunk(long lastId) throws SQLException {
+        final String sqlDeleteChunk = "DELETE FROM " + sqliteTableName + " WHERE id <= ?";
+        final String sqlHasRows = "SELECT EXISTS (SELECT 1 FROM " + sqliteTableName + ") AS has_rows";
+        final String sqlUpdateMark = "UPDATE " + sqliteTableName + "_replay_state SET high_water_mark = ? WHERE id = 1";
+        try (Connection sqliteConn = SQLiteDataSourceFactory.getDataSource().getConnection()) {
+            sqliteConn.setAutoCommit(false);
+            try (PreparedStatement deleteStmt = sqliteConn.prepareStatement(sqlDeleteChunk);
+                 PreparedStatement hasRowsStmt = sqliteConn.prepareStatement(sqlHasRows);
+                 PreparedStatement updateMarkStmt = sqliteConn.prepareStatement(sqlUpdateMark)) {
+                deleteStmt.setLong(1, lastId);
+                deleteStmt.executeUpdate();
+
+                long highWaterMark = lastId;
+                try (ResultSet rs = hasRowsStmt.executeQuery()) {
+                    if (rs.next() && !rs.getBoolean("has_rows"))
+                        highWaterMark = 0L;
+                }
+                updateMarkStmt.setLong(1, highWaterMark);
+                updateMarkStmt.executeUpdate();
+                sqliteConn.commit();
+                return highWaterMark;
             } catch (SQLException e) {
                 sqliteConn.rollback();
-                postgresConn.rollback();
-                e.printStackTrace();
+                throw e;
             }
         }
     }
 
-    public List<LogDTO> getLogsOnCurrentLoc(String world, double radius, double x, double z,
-                                            Instant since, Instant until, int limit) throws SQLException {
-        String sql = "SELECT ts, player_name, action_type, action_detail, world, x, y, z " +
-                "FROM " + postgresTableName + " " +
-                "WHERE world = ? " +
-                "AND x BETWEEN (? - ?) AND (? + ?) " +
-                "AND z BETWEEN (? - ?) AND (? + ?) " +
-                "AND ts BETWEEN ? AND ? " +
-                "ORDER BY ts DESC, id ASC " +
-                "LIMIT ?";
+    public List<LogDTO> getLogsOnCurrentLoc(String world, double radius, double x, double z, boolean circular,
+                                            Instant since, Instant until, int limit,
+                                            @Nullable LogCursor after) throws SQLException {
         try (Connection conn = postgresDataSource.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-            stmt.setString(1, world);
-            stmt.setDouble(2, x);
-            stmt.setDouble(3, radius);
-            stmt.setDouble(4, x);
-            stmt.setDouble(5, radius);
-            stmt.setDouble(6, z);
-            stmt.setDouble(7, radius);
-            stmt.setDouble(8, z);
-            stmt.setDouble(9, radius);
-            stmt.setTimestamp(10, Timestamp.from(since));
-            stmt.setTimestamp(11, Timestamp.from(until));
-            stmt.setInt(12, limit);
-
+             PreparedStatement stmt = prepareLogsOnCurrentLoc(conn, world, radius, x, z, circular,
+                     since, until, limit, after)) {
             try {
                 return getResultAsList(stmt);
             } catch (SQLException e) {
@@ -446,20 +994,10 @@ public class LogsDAO {
         }
     }
 
-    public List<LogDTO> getLogsOfPlayer(UUID playerUuid, Instant since, Instant until, int limit) throws SQLException {
-        String sql = "SELECT ts, player_name, action_type, action_detail, world, x, y, z " +
-                "FROM " + postgresTableName + " " +
-                "WHERE player_uuid = ? " +
-                "AND ts BETWEEN ? AND ? " +
-                "ORDER BY ts DESC, id ASC " +
-                "LIMIT ?";
+    public List<LogDTO> getLogsOfPlayer(UUID playerUuid, Instant since, Instant until, int limit,
+                                        @Nullable LogCursor after) throws SQLException {
         try (Connection conn = PGDataSourceFactory.getDataSource(PropsLoader.getConfig("auditconfig")).getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-            stmt.setObject(1, playerUuid);
-            stmt.setTimestamp(2, Timestamp.from(since));
-            stmt.setTimestamp(3, Timestamp.from(until));
-            stmt.setInt(4, limit);
-
+             PreparedStatement stmt = prepareLogsOfPlayer(conn, playerUuid, since, until, limit, after)) {
             try {
                 return getResultAsList(stmt);
             } catch (SQLException e) {
@@ -469,32 +1007,231 @@ public class LogsDAO {
         }
     }
 
+    /**
+     * Same query as {@link #getLogsOnCurrentLoc}, but rows are written as a JSON array straight from the
+     * {@link ResultSet} to the target while the cursor is being read.
+     *
+     * @return False if there are no rows, in which case the target is never opened.
+     */
+    public boolean streamLogsOnCurrentLoc(String world, double radius, double x, double z, boolean circular,
+                                          Instant since, Instant until, int limit, @Nullable LogCursor after,
+                                          @NotNull ResultStreamTarget target) throws SQLException, IOException {
+        try (Connection conn = postgresDataSource.getConnection()) {
+            // The driver only uses a server-side cursor inside a transaction
+            conn.setAutoCommit(false);
+            try (PreparedStatement stmt = prepareLogsOnCurrentLoc(conn, world, radius, x, z, circular,
+                    since, until, limit, after)) {
+                boolean hasRows = streamResult(stmt, target);
+                conn.commit();
+                return hasRows;
+            }
+        }
+    }
+
+    /**
+     * Same query as {@link #getLogsOfPlayer}, but rows are written as a JSON array straight from the
+     * {@link ResultSet} to the target while the cursor is being read.
+     *
+     * @return False if there are no rows, in which case the target is never opened.
+     */
+    public boolean streamLogsOfPlayer(UUID playerUuid, Instant since, Instant until, int limit,
+                                      @Nullable LogCursor after, @NotNull ResultStreamTarget target) throws SQLException, IOException {
+        try (Connection conn = postgresDataSource.getConnection()) {
+            // The driver only uses a server-side cursor inside a transaction
+            conn.setAutoCommit(false);
+            try (PreparedStatement stmt = prepareLogsOfPlayer(conn, playerUuid, since, until, limit, after)) {
+                boolean hasRows = streamResult(stmt, target);
+                conn.commit();
+                return hasRows;
+            }
+        }
+    }
+
+    /**
+     * Continue after the cursor by seeking the {@code (ts, id)} order directly,
+     * so a page costs the same no matter how deep into the history it is.
+     */
+    private @NotNull String sqlKeysetCondition(@Nullable LogCursor after) {
+        return after != null ? "AND (ts, id) < (?, ?) " : "";
+    }
+
+    private int bindKeysetCondition(@NotNull PreparedStatement stmt, int index, @Nullable LogCursor after)
+            throws SQLException {
+        if (after == null)
+            return index;
+        stmt.setTimestamp(index++, Timestamp.from(after.ts()));
+        stmt.setLong(index++, after.id());
+        return index;
+    }
+
+    private @NotNull PreparedStatement prepareLogsOnCurrentLoc(@NotNull Connection conn, String world, double radius,
+                                                               double x, double z, boolean circular,
+                                                               Instant since, Instant until, int limit,
+                                                               @Nullable LogCursor after) throws SQLException {
+        int minChunkX = ChunkUtil.toChunk(x - radius);
+        int maxChunkX = ChunkUtil.toChunk(x + radius);
+        // In long, since chunk coordinates of far-out areas saturate at the int bounds
+        long chunkColumns = (long) maxChunkX - minChunkX + 1;
+        boolean seekChunkColumns = spatialIndex == SpatialIndex.CHUNK && chunkColumns <= MAX_CHUNK_COLUMN_SEEKS;
+
+        String sql = "SELECT id, ts, player_name, action_type, action_detail, world, x, y, z " +
+                "FROM " + postgresTableName + " " +
+                "WHERE world = ? " +
+                (spatialIndex == SpatialIndex.CHUNK
+                        ? (seekChunkColumns ? "AND chunk_x = ANY (?) " : "AND chunk_x BETWEEN ? AND ? ")
+                        + "AND chunk_z BETWEEN ? AND ? "
+                        : "") +
+                "AND x BETWEEN (? - ?) AND (? + ?) " +
+                "AND z BETWEEN (? - ?) AND (? + ?) " +
+                (circular ? "AND (x - ?) * (x - ?) + (z - ?) * (z - ?) <= ? * ? " : "") +
+                "AND ts BETWEEN ? AND ? " +
+                sqlKeysetCondition(after) +
+                "ORDER BY ts DESC, id DESC " +
+                "LIMIT ?";
+        PreparedStatement stmt = conn.prepareStatement(sql);
+        int index = 1;
+        bindWorld(stmt, index++, world);
+        if (spatialIndex == SpatialIndex.CHUNK) {
+            if (seekChunkColumns) {
+                // One index seek per touched chunk column instead of a scan across all of them
+                Integer[] chunkColumnValues = new Integer[(int) chunkColumns];
+                for (int i = 0; i < chunkColumnValues.length; i++)
+                    chunkColumnValues[i] = minChunkX + i;
+                stmt.setArray(index++, conn.createArrayOf("integer", chunkColumnValues));
+            } else {
+                stmt.setInt(index++, minChunkX);
+                stmt.setInt(index++, maxChunkX);
+            }
+            stmt.setInt(index++, ChunkUtil.toChunk(z - radius));
+            stmt.setInt(index++, ChunkUtil.toChunk(z + radius));
+        }
+        stmt.setDouble(index++, x);
+        stmt.setDouble(index++, radius);
+        stmt.setDouble(index++, x);
+        stmt.setDouble(index++, radius);
+        stmt.setDouble(index++, z);
+        stmt.setDouble(index++, radius);
+        stmt.setDouble(index++, z);
+        stmt.setDouble(index++, radius);
+        if (circular) {
+            stmt.setDouble(index++, x);
+            stmt.setDouble(index++, x);
+            stmt.setDouble(index++, z);
+            stmt.setDouble(index++, z);
+            stmt.setDouble(index++, radius);
+            stmt.setDouble(index++, radius);
+        }
+        stmt.setTimestamp(index++, Timestamp.from(since));
+        stmt.setTimestamp(index++, Timestamp.from(until));
+        index = bindKeysetCondition(stmt, index, after);
+        stmt.setInt(index, limit);
+        return stmt;
+    }
+
+    private void bindWorld(@NotNull PreparedStatement stmt, int index, @NotNull String world) throws SQLException {
+        if (schemaMode == SchemaMode.COMPACT) {
+            // A world without an id has no logs, and no world has a negative id
+            Short worldId = worlds.findId(stmt.getConnection(), world);
+            stmt.setShort(index, worldId != null ? worldId : -1);
+        } else {
+            stmt.setString(index, world);
+        }
+    }
+
+    /**
+     * @return Action type name in upper case, whether the schema stores it as text or as its code.
+     */
+    private @NotNull String readActionType(@NotNull ResultSet rs) throws SQLException {
+        if (schemaMode == SchemaMode.COMPACT)
+            return ActionType.fromCode(rs.getShort("action_type")).name();
+        return rs.getString("action_type").toUpperCase();
+    }
+
+    private @NotNull String readWorld(@NotNull ResultSet rs) throws SQLException {
+        if (schemaMode == SchemaMode.COMPACT)
+            return worlds.nameOf(rs.getStatement().getConnection(), rs.getShort("world"));
+        return rs.getString("world");
+    }
+
+    private @NotNull PreparedStatement prepareLogsOfPlayer(@NotNull Connection conn, UUID playerUuid,
+                                                           Instant since, Instant until, int limit,
+                                                           @Nullable LogCursor after) throws SQLException {
+        String sql = "SELECT id, ts, player_name, action_type, action_detail, world, x, y, z " +
+                "FROM " + postgresTableName + " " +
+                "WHERE player_uuid = ? " +
+                "AND ts BETWEEN ? AND ? " +
+                sqlKeysetCondition(after) +
+                "ORDER BY ts DESC, id DESC " +
+                "LIMIT ?";
+        PreparedStatement stmt = conn.prepareStatement(sql);
+        stmt.setObject(1, playerUuid);
+        stmt.setTimestamp(2, Timestamp.from(since));
+        stmt.setTimestamp(3, Timestamp.from(until));
+        int index = bindKeysetCondition(stmt, 4, after);
+        stmt.setInt(index, limit);
+        return stmt;
+    }
+
+    /**
+     * Write every row as one element of a JSON array, serialized by the generator's own mapper like a {@link LogDTO}
+     * of the list response, cursor included. {@code action_detail} is passed through as raw JSON
+     * instead of being parsed into a {@link Map}.
+     */
+    private boolean streamResult(@NotNull PreparedStatement stmt, @NotNull ResultStreamTarget target)
+            throws SQLException, IOException {
+        stmt.setFetchSize(queryFetchSize);
+        try (ResultSet rs = stmt.executeQuery()) {
+            if (!rs.next())
+                return false;
+
+            try (JsonGenerator gen = target.open()) {
+                gen.writeStartArray();
+                do {
+                    gen.writeObject(readLog(rs, true));
+                } while (rs.next());
+                gen.writeEndArray();
+            }
+        }
+        return true;
+    }
+
     private List<LogDTO> getResultAsList(PreparedStatement stmt) throws SQLException {
         List<LogDTO> logDTOList = null;
         try (ResultSet rs = stmt.executeQuery()) {
             if (rs.next()) {
                 logDTOList = new LinkedList<>();
                 do {
-                    LogDTO log = new LogDTO();
-                    log.setTimestamp(rs.getTimestamp("ts").toInstant());
-                    log.setPlayerName(rs.getString("player_name"));
-                    log.setActionType(rs.getString("action_type"));
-                    try {
-                        String actionDetailString = rs.getString("action_detail");
-                        Map<String, Object> actionDetailMap = mapper.readValue(actionDetailString, new TypeReference<>() {
-                        });
-                        log.setActionDetail(actionDetailMap);
-                    } catch (JsonProcessingException e) {
-                        e.printStackTrace();
-                    }
-                    log.setWorld(rs.getString("world"));
-                    log.setX(rs.getDouble("x"));
-                    log.setY(rs.getDouble("y"));
-                    log.setZ(rs.getDouble("z"));
-                    logDTOList.add(log);
+                    logDTOList.add(readLog(rs, rawActionDetail));
                 } while (rs.next());
             }
         }
         return logDTOList;
     }
+
+    /**
+     * @param rawActionDetail Carry {@code action_detail} as the stored JSON text, already valid,
+     *                        instead of parsing it into a {@link Map}.
+     */
+    private @NotNull LogDTO readLog(@NotNull ResultSet rs, boolean rawActionDetail) throws SQLException {
+        LogDTO log = new LogDTO();
+        log.setRowId(rs.getLong("id"));
+        log.setTimestamp(rs.getTimestamp("ts").toInstant());
+        log.setPlayerName(rs.getString("player_name"));
+        log.setActionType(readActionType(rs));
+        String actionDetailString = rs.getString("action_detail");
+        if (rawActionDetail) {
+            log.setActionDetailJson(actionDetailString);
+        } else {
+            try {
+                log.setActionDetail(mapper.readValue(actionDetailString, ACTION_DETAIL_TYPE));
+            } catch (JsonProcessingException e) {
+                e.printStackTrace();
+            }
+        }
+        log.setWorld(readWorld(rs));
+        log.setX(rs.getDouble("x"));
+        log.setY(rs.getDouble("y"));
+        log.setZ(rs.getDouble("z"));
+        return log;
+    }
 }
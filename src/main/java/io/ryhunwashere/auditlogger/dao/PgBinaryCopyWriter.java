@@ -0,0 +1,79 @@
+package io.ryhunwashere.auditlogger.dao;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Writes rows in PostgreSQL's binary {@code COPY} format.<br>
+ * The caller is expected to call {@link #startRow(int)} followed by exactly that many field writes per row,
+ * then {@link #finish()} once all rows are written.
+ */
+class PgBinaryCopyWriter implements Closeable {
+    private static final byte[] SIGNATURE = {'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte) 0xFF, '\r', '\n', 0};
+    private static final byte JSONB_VERSION = 1;
+
+    // Postgres epoch (2000-01-01T00:00:00Z) in seconds since the Unix epoch
+    private static final long PG_EPOCH_SECONDS = 946_684_800L;
+
+    private final DataOutputStream out;
+
+    PgBinaryCopyWriter(@NotNull OutputStream out) throws IOException {
+        this.out = new DataOutputStream(new BufferedOutputStream(out, 64 * 1024));
+        this.out.write(SIGNATURE);
+        this.out.writeInt(0);   // flags
+        this.out.writeInt(0);   // header extension length
+    }
+
+    void startRow(int fieldCount) throws IOException {
+        out.writeShort(fieldCount);
+    }
+
+    void writeTimestamp(@NotNull Instant instant) throws IOException {
+        long micros = (instant.getEpochSecond() - PG_EPOCH_SECONDS) * 1_000_000L + instant.getNano() / 1_000;
+        out.writeInt(8);
+        out.writeLong(micros);
+    }
+
+    void writeUUID(@NotNull UUID uuid) throws IOException {
+        out.writeInt(16);
+        out.writeLong(uuid.getMostSignificantBits());
+        out.writeLong(uuid.getLeastSignificantBits());
+    }
+
+    void writeSmallint(short value) throws IOException {
+        out.writeInt(2);
+        out.writeShort(value);
+    }
+
+    void writeText(@NotNull String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    void writeJsonb(@NotNull String json) throws IOException {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length + 1);
+        out.writeByte(JSONB_VERSION);
+        out.write(bytes);
+    }
+
+    void writeDouble(double value) throws IOException {
+        out.writeInt(8);
+        out.writeDouble(value);
+    }
+
+    void finish() throws IOException {
+        out.writeShort(-1);    // file trailer
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+}
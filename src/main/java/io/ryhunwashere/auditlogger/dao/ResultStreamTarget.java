@@ -0,0 +1,15 @@
+package io.ryhunwashere.auditlogger.dao;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.IOException;
+
+/**
+ * Destination of a streamed query result. It's only opened once the query is known to have rows,
+ * so the caller can still pick another response when it's empty.<br>
+ * Rows are written through the generator's mapper, so a streamed result is shaped like the list response.
+ */
+@FunctionalInterface
+public interface ResultStreamTarget {
+    JsonGenerator open() throws IOException;
+}
@@ -0,0 +1,182 @@
+package io.ryhunwashere.auditlogger.dao;
+
+import io.ryhunwashere.auditlogger.dto.LogDTO;
+import io.ryhunwashere.auditlogger.dto.StatsQuery;
+import io.ryhunwashere.auditlogger.dto.StatsQuery.Dimension;
+import org.jetbrains.annotations.NotNull;
+
+import javax.sql.DataSource;
+import java.sql.*;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+
+/**
+ * Per-minute & per-hour log counts by world, action type, source & player, kept in
+ * {@code <table>_rollup_minute} and {@code <table>_rollup_hour}.<br>
+ * Counts are added in the same transaction as the logs they count, and only for rows that were
+ * actually inserted, so replays & retried batches that are deduplicated by the main table
+ * aren't counted twice.
+ */
+class RollupDAO {
+    private record RollupKey(Instant bucket, String world, String actionType, String source, UUID playerUuid) {
+    }
+
+    // Upserting keys in one global order keeps concurrent flush workers from deadlocking on each other's rows
+    private static final Comparator<RollupKey> KEY_ORDER = Comparator.comparing(RollupKey::bucket)
+            .thenComparing(RollupKey::world)
+            .thenComparing(RollupKey::actionType)
+            .thenComparing(RollupKey::source)
+            .thenComparing(RollupKey::playerUuid);
+
+    private final DataSource dataSource;
+    private final String minuteTableName;
+    private final String hourTableName;
+
+    RollupDAO(@NotNull DataSource dataSource, @NotNull String mainTableName) {
+        this.dataSource = dataSource;
+        this.minuteTableName = mainTableName + "_rollup_minute";
+        this.hourTableName = mainTableName + "_rollup_hour";
+    }
+
+    void createTables() throws SQLException {
+        try (Connection conn = dataSource.getConnection();
+             Statement stmt = conn.createStatement()) {
+            stmt.execute(sqlCreateTable(minuteTableName));
+            stmt.execute(sqlCreateTable(hourTableName));
+        }
+    }
+
+    private static @NotNull String sqlCreateTable(@NotNull String tableName) {
+        return "CREATE TABLE IF NOT EXISTS " + tableName + " ("
+                + "bucket TIMESTAMPTZ NOT NULL, "
+                + "world TEXT NOT NULL, "
+                + "action_type TEXT NOT NULL, "
+                + "source TEXT NOT NULL, "
+                + "player_uuid UUID NOT NULL, "
+                + "log_count BIGINT NOT NULL, "
+                + "PRIMARY KEY (bucket, world, action_type, source, player_uuid)"
+                + ")";
+    }
+
+    private static @NotNull String sqlUpsert(@NotNull String tableName) {
+        return "INSERT INTO " + tableName + " (bucket, world, action_type, source, player_uuid, log_count) "
+                + "VALUES (?, ?, ?, ?, ?, ?) "
+                + "ON CONFLICT (bucket, world, action_type, source, player_uuid) "
+                + "DO UPDATE SET log_count = " + tableName + ".log_count + EXCLUDED.log_count";
+    }
+
+    /**
+     * Add the inserted logs to both rollups, inside the caller's transaction.
+     */
+    void addInsertedLogs(@NotNull Connection conn, @NotNull List<LogDTO> insertedLogs) throws SQLException {
+        if (insertedLogs.isEmpty())
+            return;
+
+        Map<RollupKey, Long> minuteCounts = new TreeMap<>(KEY_ORDER);
+        Map<RollupKey, Long> hourCounts = new TreeMap<>(KEY_ORDER);
+        for (LogDTO log : insertedLogs) {
+            String world = log.getWorld();
+            String actionType = log.getActionType().toString().toLowerCase();
+            String source = log.getSource().toString().toLowerCase();
+            Instant ts = log.getTimestamp();
+            minuteCounts.merge(new RollupKey(ts.truncatedTo(ChronoUnit.MINUTES), world, actionType, source,
+                    log.getPlayerUUID()), 1L, Long::sum);
+            hourCounts.merge(new RollupKey(ts.truncatedTo(ChronoUnit.HOURS), world, actionType, source,
+                    log.getPlayerUUID()), 1L, Long::sum);
+        }
+        upsert(conn, minuteTableName, minuteCounts);
+        upsert(conn, hourTableName, hourCounts);
+    }
+
+    private void upsert(@NotNull Connection conn, @NotNull String tableName, @NotNull Map<RollupKey, Long> counts)
+            throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(sqlUpsert(tableName))) {
+            for (Map.Entry<RollupKey, Long> entry : counts.entrySet()) {
+                RollupKey key = entry.getKey();
+                stmt.setTimestamp(1, Timestamp.from(key.bucket()));
+                stmt.setString(2, key.world());
+                stmt.setString(3, key.actionType());
+                stmt.setString(4, key.source());
+                stmt.setObject(5, key.playerUuid());
+                stmt.setLong(6, entry.getValue());
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
+        }
+    }
+
+    /**
+     * Delete the buckets of both rollups that start before the cutoff date,
+     * so {@code /stats} doesn't count logs that retention already removed.
+     */
+    void applyRetention(@NotNull Connection conn, @NotNull LocalDate cutoff) throws SQLException {
+        for (String tableName : List.of(minuteTableName, hourTableName)) {
+            try (PreparedStatement stmt = conn.prepareStatement(
+                    "DELETE FROM " + tableName + " WHERE bucket < ?::date::timestamptz")) {
+                stmt.setString(1, cutoff.toString());
+                int deletedBuckets = stmt.executeUpdate();
+                if (deletedBuckets > 0)
+                    System.out.println("Deleted " + deletedBuckets + " expired rows from " + tableName);
+            }
+        }
+    }
+
+    /**
+     * @return One row per bucket & combination of the grouped dimensions, in bucket order,
+     * with the bucket start as {@code bucket} and the number of logs as {@code count}.
+     */
+    @NotNull List<Map<String, Object>> getStats(@NotNull StatsQuery query) throws SQLException {
+        ChronoUnit unit = query.resolution() == StatsQuery.Resolution.MINUTE ? ChronoUnit.MINUTES : ChronoUnit.HOURS;
+        String tableName = query.resolution() == StatsQuery.Resolution.MINUTE ? minuteTableName : hourTableName;
+
+        StringBuilder groupColumns = new StringBuilder();
+        for (Dimension dimension : query.groupBy())
+            groupColumns.append(", ").append(dimension.column());
+
+        String sql = "SELECT bucket" + groupColumns + ", SUM(log_count) AS log_count " +
+                "FROM " + tableName + " " +
+                "WHERE bucket BETWEEN ? AND ? " +
+                (query.world() != null ? "AND world = ? " : "") +
+                (query.playerUuid() != null ? "AND player_uuid = ? " : "") +
+                (query.actionType() != null ? "AND action_type = ? " : "") +
+                (query.source() != null ? "AND source = ? " : "") +
+                "GROUP BY bucket" + groupColumns + " " +
+                "ORDER BY bucket" + groupColumns + " " +
+                "LIMIT ?";
+
+        List<Map<String, Object>> rows = new ArrayList<>();
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            int index = 1;
+            // A bucket counts if the window starts anywhere inside it
+            stmt.setTimestamp(index++, Timestamp.from(query.since().truncatedTo(unit)));
+            stmt.setTimestamp(index++, Timestamp.from(query.until()));
+            if (query.world() != null)
+                stmt.setString(index++, query.world());
+            if (query.playerUuid() != null)
+                stmt.setObject(index++, query.playerUuid());
+            if (query.actionType() != null)
+                stmt.setString(index++, query.actionType().toString().toLowerCase());
+            if (query.source() != null)
+                stmt.setString(index++, query.source().toString().toLowerCase());
+            stmt.setInt(index, query.limit());
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    Map<String, Object> row = new LinkedHashMap<>();
+                    row.put("bucket", rs.getTimestamp("bucket").toInstant().toString());
+                    for (Dimension dimension : query.groupBy()) {
+                        String value = rs.getString(dimension.column());
+                        row.put(dimension.fieldName(), dimension == Dimension.WORLD || dimension == Dimension.PLAYER_UUID
+                                ? value : value.toUpperCase());
+                    }
+                    row.put("count", rs.getLong("log_count"));
+                    rows.add(row);
+                }
+            }
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,160 @@
+package io.ryhunwashere.auditlogger.dao;
+
+import io.ryhunwashere.auditlogger.dto.LogDTO;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Cached two-way mapping between world names and their {@code smallint} ids in the {@code <table>_worlds}
+ * lookup table of the compact schema.<br>
+ * New ids are assigned on their own auto-committed connection, so a batch that is rolled back
+ * never leaves an id in the cache that doesn't exist in the lookup table.
+ * Queries look up worlds missing from the cache on their own connection instead.
+ */
+class WorldDictionary {
+    private final DataSource dataSource;
+    private final String tableName;
+    private final Map<String, Short> idsByName = new ConcurrentHashMap<>();
+    private final Map<Short, String> namesById = new ConcurrentHashMap<>();
+
+    WorldDictionary(@NotNull DataSource dataSource, @NotNull String mainTableName) {
+        this.dataSource = dataSource;
+        this.tableName = mainTableName + "_worlds";
+    }
+
+    void createTable() throws SQLException {
+        final String sqlCreateTable = "CREATE TABLE IF NOT EXISTS " + tableName + " ("
+                + "id SMALLINT GENERATED ALWAYS AS IDENTITY PRIMARY KEY, "
+                + "name TEXT NOT NULL UNIQUE"
+                + ")";
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sqlCreateTable)) {
+            stmt.execute();
+        }
+    }
+
+    /**
+     * Cache every world known so far, so queries rarely have to look up a world at all.
+     */
+    void load() throws SQLException {
+        final String sqlSelectWorlds = "SELECT id, name FROM " + tableName;
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sqlSelectWorlds);
+             ResultSet rs = stmt.executeQuery()) {
+            while (rs.next())
+                cache(rs.getString("name"), rs.getShort("id"));
+        }
+    }
+
+    /**
+     * Make sure every world of the batch has a cached id, assigning ids to new worlds.<br>
+     * Call this before taking the connection for the batch, so a flush never holds two pooled connections.
+     */
+    void register(@NotNull List<LogDTO> batch) throws SQLException {
+        Connection conn = null;
+        try {
+            for (LogDTO log : batch) {
+                String name = log.getWorld();
+                if (idsByName.containsKey(name))
+                    continue;
+                if (conn == null)
+                    conn = dataSource.getConnection();
+                cache(name, insertOrSelectId(conn, name));
+            }
+        } finally {
+            if (conn != null)
+                conn.close();
+        }
+    }
+
+    /**
+     * @return The id of a world, assigning a new id if the world isn't known yet.
+     */
+    short idOf(@NotNull String name) throws SQLException {
+        Short id = idsByName.get(name);
+        if (id != null)
+            return id;
+        try (Connection conn = dataSource.getConnection()) {
+            short newId = insertOrSelectId(conn, name);
+            cache(name, newId);
+            return newId;
+        }
+    }
+
+    /**
+     * Look up a world on the connection of the query that needs it, so a query never holds two pooled connections.
+     *
+     * @return The id of a world, or null if no log was ever stored for it.
+     */
+    @Nullable Short findId(@NotNull Connection conn, @NotNull String name) throws SQLException {
+        Short id = idsByName.get(name);
+        if (id != null)
+            return id;
+        Short foundId = selectId(conn, name);
+        if (foundId != null)
+            cache(name, foundId);
+        return foundId;
+    }
+
+    /**
+     * Look up a world on the connection of the query that needs it, which may still be reading its result.
+     */
+    @NotNull String nameOf(@NotNull Connection conn, short id) throws SQLException {
+        String name = namesById.get(id);
+        if (name != null)
+            return name;
+
+        final String sqlSelectName = "SELECT name FROM " + tableName + " WHERE id = ?";
+        try (PreparedStatement stmt = conn.prepareStatement(sqlSelectName)) {
+            stmt.setShort(1, id);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (!rs.next())
+                    throw new SQLException("Unknown world id " + id + " in " + tableName);
+                name = rs.getString("name");
+            }
+        }
+        cache(name, id);
+        return name;
+    }
+
+    private short insertOrSelectId(@NotNull Connection conn, @NotNull String name) throws SQLException {
+        Short id = selectId(conn, name);
+        if (id != null)
+            return id;
+
+        // Another instance may insert the same world concurrently, so read the id back either way
+        final String sqlInsertWorld = "INSERT INTO " + tableName + " (name) VALUES (?) ON CONFLICT (name) DO NOTHING";
+        try (PreparedStatement stmt = conn.prepareStatement(sqlInsertWorld)) {
+            stmt.setString(1, name);
+            stmt.executeUpdate();
+        }
+        id = selectId(conn, name);
+        if (id == null)
+            throw new SQLException("Cannot assign an id to world '" + name + "' in " + tableName);
+        return id;
+    }
+
+    private @Nullable Short selectId(@NotNull Connection conn, @NotNull String name) throws SQLException {
+        final String sqlSelectId = "SELECT id FROM " + tableName + " WHERE name = ?";
+        try (PreparedStatement stmt = conn.prepareStatement(sqlSelectId)) {
+            stmt.setString(1, name);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? rs.getShort("id") : null;
+            }
+        }
+    }
+
+    private void cache(@NotNull String name, short id) {
+        idsByName.put(name, id);
+        namesById.put(id, name);
+    }
+}
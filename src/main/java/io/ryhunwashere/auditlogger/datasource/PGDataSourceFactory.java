@@ -2,6 +2,7 @@ package io.ryhunwashere.auditlogger.datasource;
 
 import com.zaxxer.hikari.HikariConfig;
 import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
 import io.ryhunwashere.auditlogger.util.Config;
 
 import javax.sql.DataSource;
@@ -21,9 +22,18 @@ public class PGDataSourceFactory {
             hikariConfig.setMinimumIdle(cfg.getInt("dataSource.minimumIdle"));
             hikariConfig.setIdleTimeout(cfg.getLong("dataSource.idleTimeoutSeconds") * 1000);
             hikariConfig.setConnectionTimeout(cfg.getLong("dataSource.connectionTimeoutSeconds") * 1000);
+            // 1 fails startup when PostgreSQL is unreachable, a negative value starts with an empty pool instead
+            hikariConfig.setInitializationFailTimeout(cfg.getLong("dataSource.initializationFailTimeoutMillis", 1L));
             hikariConfig.setDriverClassName("org.postgresql.Driver");
 
             return new HikariDataSource(hikariConfig);
         });
     }
+
+    /**
+     * @return Pool statistics of the data source of the config, or null if its pool isn't started.
+     */
+    public static HikariPoolMXBean getPoolMXBean(Config config) {
+        return ((HikariDataSource) getDataSource(config)).getHikariPoolMXBean();
+    }
 }
@@ -2,6 +2,7 @@ package io.ryhunwashere.auditlogger.datasource;
 
 import com.zaxxer.hikari.HikariConfig;
 import com.zaxxer.hikari.HikariDataSource;
+import io.ryhunwashere.auditlogger.util.PropsLoader;
 
 import javax.sql.DataSource;
 
@@ -12,7 +13,8 @@ public class SQLiteDataSourceFactory {
         if (dataSource == null) {
             HikariConfig config = new HikariConfig();
 
-            config.setJdbcUrl("jdbc:sqlite:fallback.sqlite");
+            String path = PropsLoader.getConfig("auditconfig").getString("db.fallbackPath", "fallback.sqlite");
+            config.setJdbcUrl("jdbc:sqlite:" + path);
             config.setMaximumPoolSize(1);
             config.setDriverClassName("org.sqlite.JDBC");
 
@@ -0,0 +1,19 @@
+package io.ryhunwashere.auditlogger.dto;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.List;
+
+/**
+ * One message of the WebSocket ingest channel: a single log or a micro-batch of logs, numbered by the client.
+ *
+ * @param seq  Sequence number of the frame, increasing within a connection.
+ * @param logs A single log or an array of logs.
+ */
+public record IngestFrame(@JsonProperty(required = true) long seq,
+                          @JsonProperty(required = true)
+                          @JsonFormat(with = JsonFormat.Feature.ACCEPT_SINGLE_VALUE_AS_ARRAY)
+                          @NotNull List<LogDTO> logs) {
+}
@@ -0,0 +1,35 @@
+package io.ryhunwashere.auditlogger.dto;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.util.Base64;
+
+/**
+ * Position of a row in the {@code ORDER BY ts DESC, id DESC} order of log queries.<br>
+ * Encoded as an opaque URL-safe string so clients can pass it back to fetch the next page.
+ */
+public record LogCursor(@NotNull Instant ts, long id) {
+    private static final int ENCODED_BYTES = Long.BYTES + Integer.BYTES + Long.BYTES;
+
+    public @NotNull String encode() {
+        ByteBuffer buffer = ByteBuffer.allocate(ENCODED_BYTES)
+                .putLong(ts.getEpochSecond())
+                .putInt(ts.getNano())
+                .putLong(id);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(buffer.array());
+    }
+
+    /**
+     * @throws IllegalArgumentException If the string isn't a cursor produced by {@link #encode()}.
+     */
+    public static @NotNull LogCursor decode(@NotNull String cursor) {
+        byte[] bytes = Base64.getUrlDecoder().decode(cursor);
+        if (bytes.length != ENCODED_BYTES)
+            throw new IllegalArgumentException("Malformed cursor: " + cursor);
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        Instant ts = Instant.ofEpochSecond(buffer.getLong(), buffer.getInt());
+        return new LogCursor(ts, buffer.getLong());
+    }
+}
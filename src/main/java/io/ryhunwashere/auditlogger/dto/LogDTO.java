@@ -1,28 +1,85 @@
 package io.ryhunwashere.auditlogger.dto;
 
 import com.fasterxml.jackson.annotation.*;
+import com.fasterxml.jackson.databind.util.RawValue;
+import io.ryhunwashere.auditlogger.util.StringInterner;
+import io.ryhunwashere.auditlogger.util.UUIDv7Generator;
 import org.jetbrains.annotations.NotNull;
 
 import java.time.Instant;
 import java.util.Map;
 import java.util.UUID;
 
+// Keeps actionDetail where it was before it got a separate getter for JSON
+@JsonPropertyOrder({"timestamp", "playerUUID", "playerName", "actionDetail"})
 public class LogDTO {
+    // Codes are stored in the compact main DB schema, so existing codes must never change
     public enum ActionType {
         // Player Actions
-        BLOCK_BREAK, BLOCK_PLACE, INTERACT, CHAT, COMMAND,
+        BLOCK_BREAK(1), BLOCK_PLACE(2), INTERACT(3), CHAT(4), COMMAND(5),
 
         // Player Status
-        JOIN, QUIT, DEATH, RESPAWN,
+        JOIN(6), QUIT(7), DEATH(8), RESPAWN(9),
 
         // System / plugin actions
-        PLUGIN_ACTION, CONSOLE_COMMAND, WORLD_EVENT
+        PLUGIN_ACTION(10), CONSOLE_COMMAND(11), WORLD_EVENT(12);
+
+        private final short code;
+
+        ActionType(int code) {
+            this.code = (short) code;
+        }
+
+        public short code() {
+            return code;
+        }
+
+        public static @NotNull ActionType fromCode(int code) {
+            for (ActionType actionType : values()) {
+                if (actionType.code == code)
+                    return actionType;
+            }
+            throw new IllegalArgumentException("Unknown action type code: " + code);
+        }
+    }
+
+    /**
+     * Told once the log is committed, either into the main DB or into the local fallback DB,
+     * or once it failed to be stored in both and only remains in the WAL (if enabled).
+     */
+    public interface CommitListener {
+        void onCommitted();
+
+        void onFailed();
     }
 
+    // Codes are stored in the compact main DB schema, so existing codes must never change
     public enum Source {
-        PLAYER, CONSOLE, PLUGIN, SYSTEM, WORLD_EVENT
+        PLAYER(1), CONSOLE(2), PLUGIN(3), SYSTEM(4), WORLD_EVENT(5);
+
+        private final short code;
+
+        Source(int code) {
+            this.code = (short) code;
+        }
+
+        public short code() {
+            return code;
+        }
+
+        public static @NotNull Source fromCode(int code) {
+            for (Source source : values()) {
+                if (source.code == code)
+                    return source;
+            }
+            throw new IllegalArgumentException("Unknown source code: " + code);
+        }
     }
 
+    // World & player names repeat across logs, so queued logs share their instances
+    private static final StringInterner WORLD_NAMES = new StringInterner(1024);
+    private static final StringInterner PLAYER_NAMES = new StringInterner(65_536);
+
     // Instant timestamp with multiple accepted key names
     @JsonAlias({"ts", "time", "datetime", "date_time", "dateTime", "instant", "instantTimestamp", "instant_timestamp"})
     @JsonFormat(shape = JsonFormat.Shape.STRING)
@@ -40,9 +97,11 @@ public class LogDTO {
     @JsonAlias({"action_type"})
     private ActionType actionType;
 
-    @JsonAlias({"action_detail"})
     private Map<String, Object> actionDetail;
 
+    // Validated JSON text of the action detail, carried instead of the map so it's never parsed
+    private String actionDetailJson;
+
     @JsonAlias({"worldName", "world_name"})
     private String world;
 
@@ -62,11 +121,26 @@ public class LogDTO {
     @JsonProperty(access = JsonProperty.Access.READ_ONLY)
     private UUID logUUID;
 
+    // Main DB row id of logs read back from the main DB, or the synthetic id of a log served from the hot tier
+    @JsonIgnore
+    private long rowId;
+
+    // WAL segment holding this log until it's committed, 0 if it isn't in the WAL
+    @JsonIgnore
+    private long walSegmentId;
+
+    // Ingest channel waiting for this log to be committed, null if nobody is
+    @JsonIgnore
+    private CommitListener commitListener;
+
     public LogDTO() {
     }
 
+    /**
+     * Give this log a time-ordered UUIDv7, so new rows land at the end of the {@code (log_uuid, ts)} index.
+     */
     public void generateLogUUID() {
-        this.logUUID = UUID.randomUUID();
+        this.logUUID = UUIDv7Generator.next();
     }
 
     public Instant getTimestamp() {
@@ -90,7 +164,7 @@ public class LogDTO {
     }
 
     public void setPlayerName(String playerName) {
-        this.playerName = playerName;
+        this.playerName = PLAYER_NAMES.intern(playerName);
     }
 
     public ActionType getActionType() {
@@ -106,12 +180,39 @@ public class LogDTO {
         this.actionType = ActionType.valueOf(actionType.toUpperCase());
     }
 
+    /**
+     * @return Parsed action detail, or null if it's only carried as raw JSON (see {@link #getActionDetailJson()}).
+     */
+    @JsonIgnore
     public Map<String, Object> getActionDetail() {
         return actionDetail;
     }
 
+    @JsonProperty("actionDetail")
+    @JsonAlias({"action_detail"})
     public void setActionDetail(Map<String, Object> actionDetail) {
         this.actionDetail = actionDetail;
+        this.actionDetailJson = null;
+    }
+
+    /**
+     * @return Raw JSON of the action detail, or null if it's only carried as a parsed map.
+     */
+    @JsonIgnore
+    public String getActionDetailJson() {
+        return actionDetailJson;
+    }
+
+    @JsonIgnore
+    public void setActionDetailJson(String actionDetailJson) {
+        this.actionDetailJson = actionDetailJson;
+        this.actionDetail = null;
+    }
+
+    // Raw JSON is written as is, without being parsed first
+    @JsonProperty("actionDetail")
+    private Object getActionDetailForJson() {
+        return actionDetailJson != null ? new RawValue(actionDetailJson) : actionDetail;
     }
 
     public String getWorld() {
@@ -119,7 +220,7 @@ public class LogDTO {
     }
 
     public void setWorld(String world) {
-        this.world = world;
+        this.world = WORLD_NAMES.intern(world);
     }
 
     public double getX() {
@@ -166,4 +267,39 @@ public class LogDTO {
     public void setLogUUID(UUID logUUID) {
         this.logUUID = logUUID;
     }
+
+    public long getRowId() {
+        return rowId;
+    }
+
+    public void setRowId(long rowId) {
+        this.rowId = rowId;
+    }
+
+    /**
+     * @return Opaque cursor to pass as {@code cursor} to continue a query after this log,
+     * or null if this log wasn't read from the main DB.
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public String getCursor() {
+        if (rowId == 0 || timestamp == null)
+            return null;
+        return new LogCursor(timestamp, rowId).encode();
+    }
+
+    public long getWalSegmentId() {
+        return walSegmentId;
+    }
+
+    public void setWalSegmentId(long walSegmentId) {
+        this.walSegmentId = walSegmentId;
+    }
+
+    public CommitListener getCommitListener() {
+        return commitListener;
+    }
+
+    public void setCommitListener(CommitListener commitListener) {
+        this.commitListener = commitListener;
+    }
 }
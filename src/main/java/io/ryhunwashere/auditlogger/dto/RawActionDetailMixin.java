@@ -0,0 +1,22 @@
+package io.ryhunwashere.auditlogger.dto;
+
+import com.fasterxml.jackson.annotation.JsonAlias;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+
+import java.util.Map;
+
+/**
+ * Mix-in for {@link LogDTO} that binds {@code actionDetail} as raw JSON text instead of a map.
+ */
+public abstract class RawActionDetailMixin {
+    @JsonIgnore
+    abstract void setActionDetail(Map<String, Object> actionDetail);
+
+    @JsonIgnore(false)
+    @JsonProperty("actionDetail")
+    @JsonAlias({"action_detail"})
+    @JsonDeserialize(using = RawJsonDeserializer.class)
+    abstract void setActionDetailJson(String actionDetailJson);
+}
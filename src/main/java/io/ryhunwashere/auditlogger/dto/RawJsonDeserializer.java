@@ -0,0 +1,33 @@
+package io.ryhunwashere.auditlogger.dto;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+/**
+ * Reads a JSON object as its JSON text by copying the parser's tokens straight into a generator,
+ * so the object is validated by the parser without being materialized as a map or tree.<br>
+ * Works with any input format (e.g. CBOR or Smile), the output is always JSON.
+ */
+public class RawJsonDeserializer extends JsonDeserializer<String> {
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    @Override
+    public String deserialize(@NotNull JsonParser parser, @NotNull DeserializationContext context) throws IOException {
+        if (parser.currentToken() != JsonToken.START_OBJECT)
+            return (String) context.handleUnexpectedToken(String.class, parser);
+
+        StringWriter writer = new StringWriter(256);
+        try (JsonGenerator generator = JSON_FACTORY.createGenerator(writer)) {
+            generator.copyCurrentStructure(parser);
+        }
+        return writer.toString();
+    }
+}
@@ -0,0 +1,50 @@
+package io.ryhunwashere.auditlogger.dto;
+
+import io.ryhunwashere.auditlogger.dto.LogDTO.ActionType;
+import io.ryhunwashere.auditlogger.dto.LogDTO.Source;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Aggregate query over the rollup tables: log counts per time bucket, optionally split by
+ * some of the rollup dimensions and filtered by others.
+ *
+ * @param groupBy Dimensions to split the counts by, any of {@link Dimension}.
+ */
+public record StatsQuery(@NotNull Resolution resolution, @NotNull Instant since, @NotNull Instant until,
+                         @NotNull List<Dimension> groupBy, @Nullable String world, @Nullable UUID playerUuid,
+                         @Nullable ActionType actionType, @Nullable Source source, int limit) {
+    public enum Resolution {
+        MINUTE, HOUR
+    }
+
+    public enum Dimension {
+        WORLD("world", "world"),
+        ACTION_TYPE("action_type", "actionType"),
+        SOURCE("source", "source"),
+        PLAYER_UUID("player_uuid", "playerUUID");
+
+        private final String column;
+        private final String fieldName;
+
+        Dimension(String column, String fieldName) {
+            this.column = column;
+            this.fieldName = fieldName;
+        }
+
+        public String column() {
+            return column;
+        }
+
+        /**
+         * @return Name of the dimension in JSON, same as the matching {@link LogDTO} field.
+         */
+        public String fieldName() {
+            return fieldName;
+        }
+    }
+}
@@ -4,19 +4,37 @@ import com.auth0.jwt.JWT;
 import com.auth0.jwt.JWTVerifier;
 import com.auth0.jwt.algorithms.Algorithm;
 import com.auth0.jwt.exceptions.JWTVerificationException;
+import com.auth0.jwt.interfaces.DecodedJWT;
+import io.ryhunwashere.auditlogger.util.PropsLoader;
 import io.undertow.server.HttpHandler;
 import io.undertow.server.HttpServerExchange;
 import io.undertow.server.RoutingHandler;
 import io.undertow.util.Headers;
 import org.jetbrains.annotations.NotNull;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Date;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 
 public class AuthHandler implements HttpHandler {
     private final RoutingHandler routes;
     private final JWTVerifier verifier;
     private final Set<String> publicRoutes;
 
+    // SHA-256 digest of a verified token -> its expiry in epoch millis
+    private final Map<ByteBuffer, Long> verifiedTokens = new ConcurrentHashMap<>();
+    private final int tokenCacheSize;
+    private final LongAdder tokenCacheHits = new LongAdder();
+    private final LongAdder tokenCacheMisses = new LongAdder();
+
+    private static final int DEFAULT_TOKEN_CACHE_SIZE = 10_000;
+
     public AuthHandler(RoutingHandler routes, String secret, String issuer, Set<String> publicRoutes) {
         this.routes = routes;
         this.publicRoutes = publicRoutes;
@@ -26,6 +44,8 @@ public class AuthHandler implements HttpHandler {
                 .withIssuer(issuer)
                 .withClaim("role", "mc-server")
                 .build();
+        this.tokenCacheSize = PropsLoader.getConfig("auditconfig")
+                .getInt("auth.tokenCacheSize", DEFAULT_TOKEN_CACHE_SIZE);
     }
 
     @Override
@@ -44,12 +64,68 @@ public class AuthHandler implements HttpHandler {
         }
 
         String token = authHeader.substring("Bearer ".length());
-        try {
-            verifier.verify(token);
+        if (verify(token)) {
             routes.handleRequest(exchange);
-        } catch (JWTVerificationException e) {
+        } else {
             exchange.setStatusCode(401);
             exchange.getResponseSender().send("Invalid or expired token");
         }
     }
+
+    /**
+     * Verify a bearer token, skipping the signature & claim checks if the same token was verified before
+     * and hasn't expired yet. Only tokens with an expiry are cached, and never past it.
+     *
+     * @return True if the token is valid.
+     */
+    public boolean verify(@NotNull String token) {
+        ByteBuffer digest = digest(token);
+        Long expiresAt = verifiedTokens.get(digest);
+        long now = System.currentTimeMillis();
+        if (expiresAt != null) {
+            if (now < expiresAt) {
+                tokenCacheHits.increment();
+                return true;
+            }
+            verifiedTokens.remove(digest, expiresAt);
+        }
+        tokenCacheMisses.increment();
+
+        DecodedJWT jwt;
+        try {
+            jwt = verifier.verify(token);
+        } catch (JWTVerificationException e) {
+            return false;
+        }
+
+        Date expiry = jwt.getExpiresAt();
+        if (expiry != null && tokenCacheSize > 0) {
+            if (verifiedTokens.size() >= tokenCacheSize)
+                verifiedTokens.values().removeIf(exp -> exp <= now);
+            if (verifiedTokens.size() < tokenCacheSize)
+                verifiedTokens.put(digest, expiry.getTime());
+        }
+        return true;
+    }
+
+    private static @NotNull ByteBuffer digest(@NotNull String token) {
+        try {
+            MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+            return ByteBuffer.wrap(sha256.digest(token.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available.", e);
+        }
+    }
+
+    public long getTokenCacheHits() {
+        return tokenCacheHits.sum();
+    }
+
+    public long getTokenCacheMisses() {
+        return tokenCacheMisses.sum();
+    }
+
+    public int getTokenCacheSize() {
+        return verifiedTokens.size();
+    }
 }
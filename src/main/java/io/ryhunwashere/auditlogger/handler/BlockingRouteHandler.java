@@ -0,0 +1,79 @@
+package io.ryhunwashere.auditlogger.handler;
+
+import io.ryhunwashere.auditlogger.metrics.Counter;
+import io.ryhunwashere.auditlogger.metrics.Metrics;
+import io.undertow.server.HttpHandler;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.util.Headers;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs a route that blocks (JDBC queries, blocking streams) on a virtual thread instead of the IO thread,
+ * so a slow request never stalls the other connections of its IO thread.<br>
+ * At most {@code maxConcurrent} requests of the route run at once. Others wait in FIFO order on their
+ * virtual thread for up to the queue timeout, then get a 503. A permit is held until the exchange
+ * completes, so a response that is still streaming after the handler returned keeps counting.
+ */
+public class BlockingRouteHandler implements HttpHandler {
+    private final HttpHandler next;
+    private final ExecutorService vt;
+    private final int maxConcurrent;
+    private final Semaphore permits;
+    private final long queueTimeoutMillis;
+    private final String retryAfterSeconds;
+    private final Counter rejectedRequests;
+
+    public BlockingRouteHandler(@NotNull String route, @NotNull HttpHandler next, @NotNull ExecutorService vt,
+                                int maxConcurrent, long queueTimeoutMillis) {
+        if (maxConcurrent < 1)
+            throw new IllegalArgumentException("Max concurrent requests of " + route + " must be positive.");
+        this.next = next;
+        this.vt = vt;
+        this.maxConcurrent = maxConcurrent;
+        this.permits = new Semaphore(maxConcurrent, true);
+        this.queueTimeoutMillis = Math.max(0L, queueTimeoutMillis);
+        this.retryAfterSeconds = Long.toString(Math.max(1L, TimeUnit.MILLISECONDS.toSeconds(queueTimeoutMillis)));
+
+        String labels = Metrics.labels("route", route);
+        this.rejectedRequests = Metrics.counter("auditlogger_route_rejected_requests_total",
+                "Requests refused after waiting the queue timeout of a blocking route.", labels);
+        Metrics.gauge("auditlogger_route_active_requests", "Requests running on a blocking route.", labels,
+                () -> this.maxConcurrent - permits.availablePermits());
+        Metrics.gauge("auditlogger_route_queued_requests", "Requests waiting for a blocking route.", labels,
+                permits::getQueueLength);
+    }
+
+    @Override
+    public void handleRequest(@NotNull HttpServerExchange exchange) throws Exception {
+        if (exchange.isInIoThread()) {
+            exchange.dispatch(vt, this);
+            return;
+        }
+
+        boolean acquired;
+        try {
+            acquired = permits.tryAcquire(queueTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            acquired = false;
+        }
+        if (!acquired) {
+            rejectedRequests.increment();
+            exchange.setStatusCode(503);
+            exchange.getResponseHeaders().put(Headers.RETRY_AFTER, retryAfterSeconds);
+            exchange.getResponseSender()
+                    .send("{\"status\":\"error\",\"message\":\"Too many concurrent requests, retry later.\"}");
+            return;
+        }
+
+        exchange.addExchangeCompleteListener((ex, nextListener) -> {
+            permits.release();
+            nextListener.proceed();
+        });
+        next.handleRequest(exchange);
+    }
+}
@@ -1,40 +1,133 @@
 package io.ryhunwashere.auditlogger.handler;
 
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.MapperFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.cfg.MapperBuilder;
 import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import io.ryhunwashere.auditlogger.dao.ResultStreamTarget;
+import io.ryhunwashere.auditlogger.dto.LogCursor;
 import io.ryhunwashere.auditlogger.dto.LogDTO;
+import io.ryhunwashere.auditlogger.dto.RawActionDetailMixin;
 import io.ryhunwashere.auditlogger.process.LogsManager;
 import io.ryhunwashere.auditlogger.util.DateTimeUtil;
+import io.ryhunwashere.auditlogger.util.Config;
+import io.ryhunwashere.auditlogger.util.PropsLoader;
 import io.undertow.server.HttpHandler;
 import io.undertow.server.HttpServerExchange;
 import io.undertow.util.Headers;
 import io.undertow.util.HttpString;
 import io.undertow.util.Methods;
+import org.xnio.IoUtils;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.io.Serial;
+import java.sql.SQLException;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class LogsHandler implements HttpHandler {
     private static final Logger log = LoggerFactory.getLogger(LogsHandler.class);
     private final LogsManager batcher;
     private final ObjectMapper mapper;
+    private final Map<IngestFormat, ObjectMapper> ingestMappers = new EnumMap<>(IngestFormat.class);
     private final ExecutorService vt;
+    private final String retryAfterSeconds;
+    private final boolean streamingIngest;
+    private final int streamChunkSize;
+    private final boolean parallelBinding;
+    private final boolean streamingQuery;
+    private final long maxRadius;
+
+    private static final HttpString QUEUE_DEPTH = new HttpString("X-Queue-Depth");
+    private static final HttpString QUEUE_CAPACITY = new HttpString("X-Queue-Capacity");
+    private static final HttpString NEXT_CURSOR = new HttpString("X-Next-Cursor");
+    private static final int DEFAULT_RETRY_AFTER_SECONDS = 2;
+    private static final int DEFAULT_STREAM_CHUNK_SIZE = 500;
+    // Minecraft worlds end 30 million blocks from the origin
+    private static final long DEFAULT_MAX_RADIUS = 30_000_000L;
+
+    /**
+     * Request body formats accepted by POST /logs. Every format binds to the same {@link LogDTO}.<br>
+     * Besides a single log or an array of logs, a body may also be a sequence of root-level logs,
+     * which is how NDJSON & concatenated CBOR/Smile values are read.
+     */
+    private enum IngestFormat {
+        JSON("JSON"),
+        NDJSON("NDJSON"),
+        CBOR("CBOR"),
+        SMILE("Smile");
+
+        private final String displayName;
+
+        IngestFormat(String displayName) {
+            this.displayName = displayName;
+        }
+
+        private static @Nullable IngestFormat of(@Nullable String contentType) {
+            if (contentType == null)
+                return null;
+            String mediaType = contentType.toLowerCase(Locale.ROOT);
+            if (mediaType.contains("application/x-ndjson"))
+                return NDJSON;
+            if (mediaType.contains("application/json"))
+                return JSON;
+            if (mediaType.contains("application/cbor"))
+                return CBOR;
+            if (mediaType.contains("application/x-jackson-smile"))
+                return SMILE;
+            return null;
+        }
+    }
 
     public LogsHandler(LogsManager batcher, ExecutorService vt) {
         this.batcher = batcher;
         this.vt = vt;
-        this.mapper = JsonMapper.builder()
+
+        Config config = PropsLoader.getConfig("auditconfig");
+        this.retryAfterSeconds = Integer.toString(config.getInt("queue.retryAfterSeconds", DEFAULT_RETRY_AFTER_SECONDS));
+        this.streamingIngest = Boolean.parseBoolean(config.getString("ingest.streaming", "false"));
+        this.streamChunkSize = Math.max(1, config.getInt("ingest.streamChunkSize", DEFAULT_STREAM_CHUNK_SIZE));
+        this.parallelBinding = Boolean.parseBoolean(config.getString("ingest.parallelBinding", "false"));
+        this.streamingQuery = Boolean.parseBoolean(config.getString("query.streaming", "false"));
+        this.maxRadius = config.getLong("query.maxRadius", DEFAULT_MAX_RADIUS);
+        // Bind actionDetail as validated raw JSON, so it's never materialized as a map on its way to the DB
+        boolean rawActionDetail = Boolean.parseBoolean(config.getString("ingest.rawActionDetail", "false"));
+        this.mapper = buildMapper(JsonMapper.builder(), rawActionDetail);
+        ingestMappers.put(IngestFormat.JSON, mapper);
+        ingestMappers.put(IngestFormat.NDJSON, mapper);
+        ingestMappers.put(IngestFormat.CBOR, buildMapper(CBORMapper.builder(), rawActionDetail));
+        ingestMappers.put(IngestFormat.SMILE, buildMapper(SmileMapper.builder(), rawActionDetail));
+    }
+
+    /**
+     * Build the mapper every ingest channel binds {@link LogDTO}s with, for any Jackson format.
+     * Unknown fields are rejected and enum values are read case-insensitively.
+     *
+     * @param builder         Builder of the format's mapper, e.g. {@code JsonMapper.builder()}.
+     * @param rawActionDetail Bind {@code actionDetail} as validated raw JSON text instead of a map.
+     */
+    public static @NotNull ObjectMapper buildMapper(@NotNull MapperBuilder<?, ?> builder, boolean rawActionDetail) {
+        if (rawActionDetail)
+            builder.addMixIn(LogDTO.class, RawActionDetailMixin.class);
+        return builder
                 .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, true)
                 .enable(MapperFeature.ACCEPT_CASE_INSENSITIVE_ENUMS)
                 .build()
@@ -43,7 +136,6 @@ public class LogsHandler implements HttpHandler {
 
     @Override
     public void handleRequest(@NotNull HttpServerExchange exchange) {
-//        vt.submit(() -> {
         HttpString method = exchange.getRequestMethod();
         if (method.equals(Methods.POST)) {
             postLogs(exchange);
@@ -54,43 +146,203 @@ public class LogsHandler implements HttpHandler {
             exchange.getResponseSender()
                     .send("{\"status\":\"error\",\"message\":\"Only GET & POST methods allowed!\"}");
         }
-//        });
     }
 
     private void postLogs(@NotNull HttpServerExchange exchange) {
-//        vt.submit(() -> {
-        String contentType = exchange.getRequestHeaders().getFirst(Headers.CONTENT_TYPE_STRING);
-        if (contentType == null || !contentType.contains("application/json")) {
+        IngestFormat format = IngestFormat.of(exchange.getRequestHeaders().getFirst(Headers.CONTENT_TYPE_STRING));
+        if (format == null) {
             exchange.setStatusCode(415);
             exchange.getResponseSender()
-                    .send("{\"status\":\"error\",\"message\":\"Content-Type must be application/json\"}");
+                    .send("{\"status\":\"error\",\"message\":\"Content-Type must be application/json, "
+                            + "application/x-ndjson, application/cbor or application/x-jackson-smile\"}");
+            return;
+        }
+
+        if (streamingIngest) {
+            // Reading the body through a blocking stream must happen off the IO thread
+            exchange.dispatch(vt, () -> streamLogs(exchange, format));
             return;
         }
 
-        exchange.getRequestReceiver().receiveFullString((ex, json) -> {
+        exchange.getRequestReceiver().receiveFullBytes((ex, body) -> {
+            List<LogDTO> logs;
             try {
-                if (json.trim().startsWith("[")) { // If JSON have multiple objects
-                    List<LogDTO> logs = mapper.readValue(json, new TypeReference<>() {
-                    });
-                    logs.forEach(LogDTO::generateLogUUID);
-                    batcher.addLogs(logs);
-                } else { // If there's only 1 object
-                    LogDTO log = mapper.readValue(json, LogDTO.class);
-                    log.generateLogUUID();
-                    batcher.addLog(log);
-                }
-                ex.setStatusCode(202);
-                ex.getResponseSender().send("{\"status\":\"Accepted!\"}");
+                // Reads a single log, an array of logs or a sequence of root-level logs
+                logs = ingestMappers.get(format).readerFor(LogDTO.class).<LogDTO>readValues(body).readAll();
+                if (logs.isEmpty())
+                    throw new IOException("Request body has no logs.");
+                logs.forEach(LogDTO::generateLogUUID);
             } catch (Exception e) {
                 ex.setStatusCode(400);
-                ex.getResponseSender().send("{\"status\":\"error\",\"message\":\"Invalid JSON format!\"}");
+                ex.getResponseSender().send("{\"status\":\"error\",\"message\":\"Invalid "
+                        + format.displayName + " format!\"}");
+                return;
             }
+
+            // Admission may block under the BLOCK overflow policy, so keep it off the IO thread
+            ex.dispatch(vt, () -> enqueueLogs(ex, logs));
         });
-//        });
     }
 
+    private void enqueueLogs(@NotNull HttpServerExchange exchange, @NotNull List<LogDTO> logs) {
+        sendAdmissionResult(exchange, batcher.addLogs(logs));
+    }
+
+    private void sendAdmissionResult(@NotNull HttpServerExchange exchange, boolean accepted) {
+        exchange.getResponseHeaders().put(QUEUE_DEPTH, batcher.getQueueSize());
+        exchange.getResponseHeaders().put(QUEUE_CAPACITY, batcher.getQueueCapacity());
+        if (!accepted) {
+            exchange.setStatusCode(429);
+            exchange.getResponseHeaders().put(Headers.RETRY_AFTER, retryAfterSeconds);
+            exchange.getResponseSender()
+                    .send("{\"status\":\"error\",\"message\":\"Ingest queue is full, retry later.\"}");
+            return;
+        }
+        exchange.setStatusCode(202);
+        exchange.getResponseSender().send("{\"status\":\"Accepted!\"}");
+    }
+
+    /**
+     * Parse the request body incrementally and enqueue logs in chunks of {@code ingest.streamChunkSize}
+     * while the rest of the body is still being read.<br>
+     * The first chunk goes through normal admission, so a full queue still answers 429.
+     * Later chunks of an admitted request are never refused for a full queue. If one can't be written to the WAL,
+     * the request answers 503 with the number of logs accepted before it.
+     * When parallel binding is enabled, every later chunk is only tokenized here
+     * and bound to {@link LogDTO}s on its own virtual thread. Bound chunks are still added in body order,
+     * so the {@code accepted} count of a failed request is always a prefix of its body.<br>
+     * The body may be a single log, an array of logs or a sequence of root-level logs (e.g. NDJSON).
+     */
+    private void streamLogs(@NotNull HttpServerExchange exchange, @NotNull IngestFormat format) {
+        exchange.startBlocking();
+        AtomicInteger acceptedCount = new AtomicInteger();
+        ObjectMapper ingestMapper = ingestMappers.get(format);
+
+        try (JsonParser parser = ingestMapper.createParser(exchange.getInputStream());
+             ExecutorService binders = Executors.newVirtualThreadPerTaskExecutor()) {
+            JsonToken firstToken = parser.nextToken();
+            boolean inArray = firstToken == JsonToken.START_ARRAY;
+            if (!inArray && firstToken != JsonToken.START_OBJECT)
+                throw new IOException("Expected a log object or an array of log objects.");
+
+            boolean admitted = false;
+            List<LogDTO> chunk = new ArrayList<>(streamChunkSize);
+            List<TokenBuffer> unboundChunk = new ArrayList<>(streamChunkSize);
+            // Chunks being bound in parallel, in body order
+            Deque<Future<List<LogDTO>>> pendingChunks = new ArrayDeque<>();
+            JsonToken token = inArray ? parser.nextToken() : firstToken;
+            for (; token == JsonToken.START_OBJECT; token = parser.nextToken()) {
+                if (admitted && parallelBinding) {
+                    TokenBuffer buffer = new TokenBuffer(parser);
+                    buffer.copyCurrentStructure(parser);
+                    unboundChunk.add(buffer);
+                    if (unboundChunk.size() == streamChunkSize) {
+                        List<TokenBuffer> toBind = unboundChunk;
+                        pendingChunks.add(binders.submit(() -> bindChunk(ingestMapper, toBind)));
+                        unboundChunk = new ArrayList<>(streamChunkSize);
+                        addBoundChunks(pendingChunks, false, acceptedCount);
+                    }
+                    continue;
+                }
+
+                LogDTO log = ingestMapper.readValue(parser, LogDTO.class);
+                log.generateLogUUID();
+                chunk.add(log);
+                if (chunk.size() < streamChunkSize)
+                    continue;
+
+                if (admitted) {
+                    addRemainingLogs(chunk, acceptedCount);
+                } else {
+                    if (!batcher.addLogs(chunk)) {
+                        sendAdmissionResult(exchange, false);
+                        return;
+                    }
+                    acceptedCount.addAndGet(chunk.size());
+                    admitted = true;
+                }
+                chunk = new ArrayList<>(streamChunkSize);
+            }
+            if (inArray ? token != JsonToken.END_ARRAY : token != null)
+                throw new IOException("Expected only log objects in the request body.");
+
+            addBoundChunks(pendingChunks, true, acceptedCount);
+
+            if (!admitted) {
+                // Nothing was admitted before the end, so this is every log of the body
+                if (chunk.isEmpty())
+                    throw new IOException("Request body has no logs.");
+                enqueueLogs(exchange, chunk);
+                return;
+            }
+            addRemainingLogs(chunk, acceptedCount);
+            addRemainingLogs(bindChunk(ingestMapper, unboundChunk), acceptedCount);
+            sendAdmissionResult(exchange, true);
+        } catch (IOException | ExecutionException e) {
+            exchange.setStatusCode(400);
+            exchange.getResponseSender().send("{\"status\":\"error\",\"message\":\"Invalid "
+                    + format.displayName + " format!\","
+                    + "\"accepted\":" + acceptedCount.get() + "}");
+        } catch (LogsNotStoredException e) {
+            exchange.setStatusCode(503);
+            exchange.getResponseHeaders().put(Headers.RETRY_AFTER, retryAfterSeconds);
+            exchange.getResponseSender().send("{\"status\":\"error\",\"message\":\"Logs could not be stored, "
+                    + "resend the logs after the accepted ones.\","
+                    + "\"accepted\":" + acceptedCount.get() + "}");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            exchange.setStatusCode(503);
+            exchange.getResponseSender().send("{\"status\":\"error\",\"message\":\"Ingest interrupted.\"}");
+        }
+    }
+
+    /**
+     * Thrown when a later chunk of an admitted request can't be written to the WAL.
+     * The chunk and everything after it are not accepted.
+     */
+    private static final class LogsNotStoredException extends Exception {
+        @Serial
+        private static final long serialVersionUID = 1L;
+    }
+
+    /**
+     * Add the chunks at the head of the pending chunks that are done binding, stopping at the first one
+     * still being bound unless asked to wait for all of them.<br>
+     * A chunk that failed to bind throws, and nothing after it is added.
+     */
+    private void addBoundChunks(@NotNull Deque<Future<List<LogDTO>>> pendingChunks, boolean await,
+                                @NotNull AtomicInteger acceptedCount)
+            throws ExecutionException, InterruptedException, LogsNotStoredException {
+        while (!pendingChunks.isEmpty() && (await || pendingChunks.peekFirst().isDone()))
+            addRemainingLogs(pendingChunks.pollFirst().get(), acceptedCount);
+    }
+
+    private void addRemainingLogs(@NotNull List<LogDTO> logs, @NotNull AtomicInteger acceptedCount)
+            throws LogsNotStoredException {
+        if (logs.isEmpty())
+            return;
+        if (!batcher.addRemainingLogs(logs))
+            throw new LogsNotStoredException();
+        acceptedCount.addAndGet(logs.size());
+    }
+
+    private @NotNull List<LogDTO> bindChunk(@NotNull ObjectMapper ingestMapper, @NotNull List<TokenBuffer> chunk)
+            throws IOException {
+        List<LogDTO> logs = new ArrayList<>(chunk.size());
+        for (TokenBuffer buffer : chunk) {
+            try (JsonParser parser = buffer.asParser()) {
+                LogDTO log = ingestMapper.readValue(parser, LogDTO.class);
+                log.generateLogUUID();
+                logs.add(log);
+            }
+        }
+        return logs;
+    }
+
+    /**
+     * Queries block on JDBC, so GET /logs must run behind a {@link BlockingRouteHandler}.
+     */
     private void getLogs(@NotNull HttpServerExchange exchange) {
-//        vt.submit(() -> {
         Map<String, Deque<String>> params = exchange.getQueryParameters();
 
         String sinceStr = getParam(params, "since");
@@ -114,11 +366,26 @@ public class LogsHandler implements HttpHandler {
         }
 
         int limit = Integer.parseInt(limitStr);
+        LogCursor after;
+        try {
+            String cursorStr = getParam(params, "cursor");
+            after = cursorStr != null ? LogCursor.decode(cursorStr) : null;
+        } catch (IllegalArgumentException e) {
+            exchange.setStatusCode(400);
+            exchange.getResponseSender()
+                    .send("{\"status\":\"error\",\"message\":\"Invalid 'cursor'.\"}");
+            return;
+        }
+
         String playerUuidStr = getParam(params, "player_uuid");
         if (playerUuidStr != null) {
             UUID playerUuid = UUID.fromString(playerUuidStr);
-            List<LogDTO> logDTOList = batcher.getLogsOfPlayer(playerUuid, since, until, limit);
-            sendJson(exchange, logDTOList);
+            if (streamingQuery && !batcher.coversRecentLogs(until)) {
+                streamJson(exchange, target -> batcher.streamLogsOfPlayer(playerUuid, since, until, limit, after, target));
+                return;
+            }
+            List<LogDTO> logDTOList = batcher.getLogsOfPlayer(playerUuid, since, until, limit, after);
+            sendJson(exchange, logDTOList, limit);
             return;
         }
 
@@ -131,22 +398,60 @@ public class LogsHandler implements HttpHandler {
             exchange.getResponseSender()
                     .send("{\"status\":\"error\",\"message\":\"Query without playerUuid must contain 'world', 'radius', 'x', & 'z'.\"}");
         } else {
-            double radius = Double.parseDouble(radiusStr);
-            double x = Double.parseDouble(xStr);
-            double z = Double.parseDouble(zStr);
-            List<LogDTO> logDTOList = batcher.getLogsOnCurrentLoc(world, radius, x, z, since, until, limit);
-            sendJson(exchange, logDTOList);
+            double radius;
+            double x;
+            double z;
+            try {
+                radius = Double.parseDouble(radiusStr);
+                x = Double.parseDouble(xStr);
+                z = Double.parseDouble(zStr);
+            } catch (NumberFormatException e) {
+                exchange.setStatusCode(400);
+                exchange.getResponseSender()
+                        .send("{\"status\":\"error\",\"message\":\"'radius', 'x', & 'z' must be numbers.\"}");
+                return;
+            }
+            if (!Double.isFinite(x) || !Double.isFinite(z)) {
+                exchange.setStatusCode(400);
+                exchange.getResponseSender()
+                        .send("{\"status\":\"error\",\"message\":\"'x' & 'z' must be finite.\"}");
+                return;
+            }
+            // Also rejects NaN & infinity
+            if (!(radius > 0) || radius > maxRadius) {
+                exchange.setStatusCode(400);
+                exchange.getResponseSender()
+                        .send("{\"status\":\"error\",\"message\":\"'radius' must be positive and at most "
+                                + maxRadius + ".\"}");
+                return;
+            }
+            // 'radius' covers a square area unless an exact circle is asked for
+            boolean circular = "circle".equalsIgnoreCase(getParam(params, "shape"));
+            if (streamingQuery && !batcher.coversRecentLogs(until)) {
+                streamJson(exchange, target -> batcher.streamLogsOnCurrentLoc(world, radius, x, z, circular,
+                        since, until, limit, after, target));
+                return;
+            }
+            List<LogDTO> logDTOList = batcher.getLogsOnCurrentLoc(world, radius, x, z, circular,
+                    since, until, limit, after);
+            sendJson(exchange, logDTOList, limit);
         }
-//        });
     }
 
-    private void sendJson(@NotNull HttpServerExchange exchange, List<LogDTO> logDTOList) {
+    private void sendJson(@NotNull HttpServerExchange exchange, List<LogDTO> logDTOList, int limit) {
         if (logDTOList == null) {
             exchange.setStatusCode(204);
             exchange.getResponseSender().send("No logs found.");
             return;
         }
 
+        // A full page may have more logs after it, so hand out the cursor of its last log
+        if (logDTOList.size() >= limit) {
+            String nextCursor = logDTOList.getLast().getCursor();
+            if (nextCursor != null)
+                exchange.getResponseHeaders().put(NEXT_CURSOR, nextCursor);
+        }
+
         try {
             String jsonQueryResult = mapper.writeValueAsString(logDTOList);
             exchange.setStatusCode(200);
@@ -160,9 +465,48 @@ public class LogsHandler implements HttpHandler {
         }
     }
 
+    @FunctionalInterface
+    private interface StreamingQuery {
+        boolean run(ResultStreamTarget target) throws SQLException, IOException;
+    }
+
+    /**
+     * Run the query on the current virtual thread and write rows to the response as they are read from the cursor.
+     * The status code is only committed once the first row is known to exist.<br>
+     * Rows are shaped like those of {@link #sendJson}, each with its cursor, but whether the page is full is only known
+     * after the headers are sent, so there is no {@code X-Next-Cursor}: the next page starts after the last row's cursor.
+     */
+    private void streamJson(@NotNull HttpServerExchange exchange, @NotNull StreamingQuery query) {
+        exchange.startBlocking();
+        try {
+            boolean hasRows = query.run(() -> {
+                exchange.setStatusCode(200);
+                exchange.getResponseHeaders().put(Headers.CONTENT_TYPE, "application/json");
+                return mapper.getFactory().createGenerator(exchange.getOutputStream());
+            });
+            if (!hasRows) {
+                exchange.setStatusCode(204);
+                exchange.getResponseSender().send("No logs found.");
+            }
+        } catch (SQLException | IOException e) {
+            log.error(e.getMessage());
+            if (exchange.isResponseStarted()) {
+                // Nothing meaningful can be sent anymore, the truncated array tells the client it failed
+                IoUtils.safeClose(exchange.getConnection());
+                return;
+            }
+            exchange.setStatusCode(500);
+            exchange.getResponseSender()
+                    .send("{\"status\":\"error\",\"message\":\"Error while querying logs!\"}");
+        }
+    }
+
     private @Nullable String getParam(@NotNull Map<String, Deque<String>> params, String key) {
+        Deque<String> values = params.get(key);
+        if (values == null)
+            return null;
         try {
-            return params.get(key).getFirst();
+            return values.getFirst();
         } catch (NoSuchElementException e) {
             return null;
         }
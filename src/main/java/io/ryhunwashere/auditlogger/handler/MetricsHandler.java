@@ -0,0 +1,21 @@
+package io.ryhunwashere.auditlogger.handler;
+
+import io.ryhunwashere.auditlogger.metrics.Metrics;
+import io.undertow.server.HttpHandler;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.util.Headers;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * GET /metrics in the Prometheus text exposition format.
+ */
+public class MetricsHandler implements HttpHandler {
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    @Override
+    public void handleRequest(@NotNull HttpServerExchange exchange) {
+        exchange.setStatusCode(200);
+        exchange.getResponseHeaders().put(Headers.CONTENT_TYPE, CONTENT_TYPE);
+        exchange.getResponseSender().send(Metrics.scrape());
+    }
+}
@@ -0,0 +1,47 @@
+package io.ryhunwashere.auditlogger.handler;
+
+import io.ryhunwashere.auditlogger.metrics.Counter;
+import io.ryhunwashere.auditlogger.metrics.Histogram;
+import io.ryhunwashere.auditlogger.metrics.Metrics;
+import io.undertow.server.HttpHandler;
+import io.undertow.server.HttpServerExchange;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Records the latency & response status of one route.<br>
+ * Latency is taken when the exchange completes, so requests that are dispatched or answered
+ * asynchronously are measured until their response is done, not until the handler returns.
+ */
+public class RouteMetricsHandler implements HttpHandler {
+    private static final double[] LATENCY_BUCKETS_SECONDS =
+            {0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10};
+
+    private final HttpHandler next;
+    private final Histogram latency;
+    private final Counter[] responsesByStatusClass = new Counter[5];   // 1xx to 5xx
+
+    public RouteMetricsHandler(@NotNull String route, @NotNull HttpHandler next) {
+        this.next = next;
+        this.latency = Metrics.histogram("auditlogger_http_request_duration_seconds",
+                "Time from receiving a request until its response is complete.",
+                LATENCY_BUCKETS_SECONDS, Metrics.labels("route", route));
+        for (int i = 0; i < responsesByStatusClass.length; i++) {
+            responsesByStatusClass[i] = Metrics.counter("auditlogger_http_responses_total",
+                    "Responses by route & status class.",
+                    Metrics.labels("route", route, "status", (i + 1) + "xx"));
+        }
+    }
+
+    @Override
+    public void handleRequest(@NotNull HttpServerExchange exchange) throws Exception {
+        long startedAt = System.nanoTime();
+        exchange.addExchangeCompleteListener((ex, nextListener) -> {
+            latency.observeNanos(System.nanoTime() - startedAt);
+            int statusClass = ex.getStatusCode() / 100;
+            if (statusClass >= 1 && statusClass <= responsesByStatusClass.length)
+                responsesByStatusClass[statusClass - 1].increment();
+            nextListener.proceed();
+        });
+        next.handleRequest(exchange);
+    }
+}
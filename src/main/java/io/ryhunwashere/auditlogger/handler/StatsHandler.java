@@ -0,0 +1,138 @@
+package io.ryhunwashere.auditlogger.handler;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import io.ryhunwashere.auditlogger.dto.LogDTO.ActionType;
+import io.ryhunwashere.auditlogger.dto.LogDTO.Source;
+import io.ryhunwashere.auditlogger.dto.StatsQuery;
+import io.ryhunwashere.auditlogger.dto.StatsQuery.Dimension;
+import io.ryhunwashere.auditlogger.dto.StatsQuery.Resolution;
+import io.ryhunwashere.auditlogger.process.LogsManager;
+import io.ryhunwashere.auditlogger.util.DateTimeUtil;
+import io.undertow.server.HttpHandler;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.util.Headers;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.time.Instant;
+import java.util.*;
+
+/**
+ * GET /stats answers aggregate questions from the rollup tables without touching the raw log partitions.<br>
+ * Query parameters: {@code since} & {@code until} (required), {@code resolution} ({@code minute} or
+ * {@code hour}, default {@code hour}), {@code group_by} (comma-separated {@code world}, {@code action_type},
+ * {@code source}, {@code player_uuid}), the filters {@code world}, {@code player_uuid}, {@code action_type}
+ * & {@code source}, and {@code limit}.<br>
+ * Rollup queries are blocking JDBC calls, so this handler must run behind a {@link BlockingRouteHandler}.
+ */
+public class StatsHandler implements HttpHandler {
+    private final LogsManager batcher;
+    private final ObjectMapper mapper = JsonMapper.builder().build();
+
+    private static final int DEFAULT_LIMIT = 1000;
+    private static final int MAX_LIMIT = 10_000;
+
+    public StatsHandler(LogsManager batcher) {
+        this.batcher = batcher;
+    }
+
+    @Override
+    public void handleRequest(@NotNull HttpServerExchange exchange) {
+        if (!batcher.hasStats()) {
+            exchange.setStatusCode(404);
+            exchange.getResponseSender()
+                    .send("{\"status\":\"error\",\"message\":\"Stats are disabled, enable 'rollup.enabled'.\"}");
+            return;
+        }
+
+        Map<String, Deque<String>> params = exchange.getQueryParameters();
+        String sinceStr = getParam(params, "since");
+        String untilStr = getParam(params, "until");
+        if (sinceStr == null || untilStr == null) {
+            sendError(exchange, "Query must contain 'since' & 'until'.");
+            return;
+        }
+
+        StatsQuery query;
+        try {
+            Instant since = DateTimeUtil.stringToInstant(sinceStr);
+            Instant until = DateTimeUtil.stringToInstant(untilStr);
+            if (until.isBefore(since)) {
+                sendError(exchange, "'until' cannot be earlier than 'since'.");
+                return;
+            }
+
+            String resolutionStr = getParam(params, "resolution");
+            Resolution resolution = resolutionStr != null
+                    ? Resolution.valueOf(resolutionStr.trim().toUpperCase())
+                    : Resolution.HOUR;
+
+            List<Dimension> groupBy = new ArrayList<>();
+            String groupByStr = getParam(params, "group_by");
+            if (groupByStr != null && !groupByStr.isBlank()) {
+                for (String dimension : groupByStr.split(",")) {
+                    Dimension parsed = Dimension.valueOf(dimension.trim().toUpperCase());
+                    if (!groupBy.contains(parsed))
+                        groupBy.add(parsed);
+                }
+            }
+
+            String playerUuidStr = getParam(params, "player_uuid");
+            String actionTypeStr = getParam(params, "action_type");
+            String sourceStr = getParam(params, "source");
+            String limitStr = getParam(params, "limit");
+            int limit = limitStr != null ? Integer.parseInt(limitStr) : DEFAULT_LIMIT;
+            if (limit < 1 || limit > MAX_LIMIT) {
+                sendError(exchange, "'limit' must be between 1 and " + MAX_LIMIT + ".");
+                return;
+            }
+
+            query = new StatsQuery(resolution, since, until, groupBy,
+                    getParam(params, "world"),
+                    playerUuidStr != null ? UUID.fromString(playerUuidStr) : null,
+                    actionTypeStr != null ? ActionType.valueOf(actionTypeStr.trim().toUpperCase()) : null,
+                    sourceStr != null ? Source.valueOf(sourceStr.trim().toUpperCase()) : null,
+                    limit);
+        } catch (RuntimeException e) {
+            // Unparseable date, number, UUID or unknown enum name
+            sendError(exchange, "Invalid query parameter: " + e.getMessage());
+            return;
+        }
+
+        List<Map<String, Object>> stats = batcher.getStats(query);
+        if (stats == null) {
+            exchange.setStatusCode(500);
+            exchange.getResponseSender().send("{\"status\":\"error\",\"message\":\"Cannot query stats.\"}");
+            return;
+        }
+
+        try {
+            String json = mapper.writeValueAsString(stats);
+            exchange.setStatusCode(200);
+            exchange.getResponseHeaders().put(Headers.CONTENT_TYPE, "application/json");
+            exchange.getResponseSender().send(json);
+        } catch (JsonProcessingException e) {
+            exchange.setStatusCode(500);
+            exchange.getResponseSender().send("{\"status\":\"error\",\"message\":\"Cannot serialize stats.\"}");
+        }
+    }
+
+    private void sendError(@NotNull HttpServerExchange exchange, @NotNull String message) {
+        Map<String, String> error = new LinkedHashMap<>();
+        error.put("status", "error");
+        error.put("message", message);
+        exchange.setStatusCode(400);
+        try {
+            exchange.getResponseSender().send(mapper.writeValueAsString(error));
+        } catch (JsonProcessingException e) {
+            exchange.getResponseSender().send("{\"status\":\"error\",\"message\":\"Invalid query.\"}");
+        }
+    }
+
+    private @Nullable String getParam(@NotNull Map<String, Deque<String>> params, String key) {
+        Deque<String> values = params.get(key);
+        return values != null ? values.peekFirst() : null;
+    }
+}
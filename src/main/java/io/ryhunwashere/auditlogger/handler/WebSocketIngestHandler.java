@@ -0,0 +1,331 @@
+package io.ryhunwashere.auditlogger.handler;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.fasterxml.jackson.databind.util.ByteBufferBackedInputStream;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import io.ryhunwashere.auditlogger.dto.IngestFrame;
+import io.ryhunwashere.auditlogger.dto.LogDTO;
+import io.ryhunwashere.auditlogger.metrics.Counter;
+import io.ryhunwashere.auditlogger.metrics.Metrics;
+import io.ryhunwashere.auditlogger.process.LogsManager;
+import io.ryhunwashere.auditlogger.util.Config;
+import io.ryhunwashere.auditlogger.util.PropsLoader;
+import io.undertow.Handlers;
+import io.undertow.server.HttpHandler;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.websockets.WebSocketProtocolHandshakeHandler;
+import io.undertow.websockets.core.AbstractReceiveListener;
+import io.undertow.websockets.core.BufferedBinaryMessage;
+import io.undertow.websockets.core.BufferedTextMessage;
+import io.undertow.websockets.core.CloseMessage;
+import io.undertow.websockets.core.WebSocketChannel;
+import io.undertow.websockets.core.WebSockets;
+import io.undertow.websockets.spi.WebSocketHttpExchange;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Persistent ingest channel on GET /logs/ws. The upgrade request passes {@link AuthHandler} like any other request,
+ * so a plugin is authenticated once per connection instead of once per batch.<br>
+ * Every message is an {@link IngestFrame}, as a JSON text frame or a CBOR binary frame:
+ * {@code {"seq":1,"logs":[...]}}. Sequence numbers must increase within a connection.<br>
+ * Once the logs of every frame up to a sequence number are committed, into the main DB or the local fallback DB,
+ * the server answers {@code {"ack":N}}. Acks are cumulative over the frames received on the connection,
+ * so after a reconnect a plugin resends exactly the frames after its last ack.<br>
+ * A frame refused because the ingest queue is full is answered with {@code {"nack":N,...}}, and later frames
+ * are dropped until that frame is sent again, so an ack never covers a refused frame.<br>
+ * If the logs of a frame can't be stored in either DB, the frames before it are acked
+ * and the connection is closed with 1011, so the plugin resends from that frame on once it reconnects.
+ */
+public class WebSocketIngestHandler implements HttpHandler {
+    private static final Logger log = LoggerFactory.getLogger(WebSocketIngestHandler.class);
+    private final LogsManager batcher;
+    private final ExecutorService vt;
+    private final ObjectMapper jsonMapper;
+    private final ObjectMapper cborMapper;
+    private final WebSocketProtocolHandshakeHandler handshake;
+    private final long maxMessageBytes;
+    private final int maxReceivedFrames;
+    private final String retryAfterSeconds;
+
+    private final AtomicInteger openConnections = new AtomicInteger();
+    private final Counter receivedFrames = Metrics.counter("auditlogger_websocket_frames_total",
+            "Frames received on the WebSocket ingest channel.");
+    private final Counter refusedFrames = Metrics.counter("auditlogger_websocket_refused_frames_total",
+            "Frames of the WebSocket ingest channel refused because the ingest queue was full.");
+
+    private static final long DEFAULT_MAX_MESSAGE_BYTES = 1024L * 1024L;
+    private static final int DEFAULT_MAX_RECEIVED_FRAMES = 64;
+    private static final int DEFAULT_RETRY_AFTER_SECONDS = 2;
+
+    public WebSocketIngestHandler(@NotNull LogsManager batcher, @NotNull ExecutorService vt) {
+        this.batcher = batcher;
+        this.vt = vt;
+
+        Config config = PropsLoader.getConfig("auditconfig");
+        this.maxMessageBytes = config.getLong("websocket.maxMessageBytes", DEFAULT_MAX_MESSAGE_BYTES);
+        this.maxReceivedFrames = Math.max(1, config.getInt("websocket.maxReceivedFrames", DEFAULT_MAX_RECEIVED_FRAMES));
+        this.retryAfterSeconds = Integer.toString(config.getInt("queue.retryAfterSeconds", DEFAULT_RETRY_AFTER_SECONDS));
+        boolean rawActionDetail = Boolean.parseBoolean(config.getString("ingest.rawActionDetail", "false"));
+        this.jsonMapper = LogsHandler.buildMapper(JsonMapper.builder(), rawActionDetail);
+        this.cborMapper = LogsHandler.buildMapper(CBORMapper.builder(), rawActionDetail);
+        this.handshake = Handlers.websocket(this::onConnect);
+
+        Metrics.gauge("auditlogger_websocket_connections", "Open connections of the WebSocket ingest channel.",
+                openConnections::get);
+    }
+
+    @Override
+    public void handleRequest(@NotNull HttpServerExchange exchange) throws Exception {
+        handshake.handleRequest(exchange);
+    }
+
+    private void onConnect(@NotNull WebSocketHttpExchange exchange, @NotNull WebSocketChannel channel) {
+        openConnections.incrementAndGet();
+        channel.addCloseTask(ch -> openConnections.decrementAndGet());
+        channel.getReceiveSetter().set(new Connection(channel));
+        channel.resumeReceives();
+    }
+
+    /**
+     * Frames are parsed on the IO thread, then admitted one at a time & in order on a virtual thread,
+     * since admission may block under the BLOCK overflow policy or when spilling to the local fallback DB.
+     * Receiving pauses while {@code websocket.maxReceivedFrames} frames wait for admission.
+     */
+    private final class Connection extends AbstractReceiveListener {
+        private final WebSocketChannel channel;
+
+        // Guarded by this
+        private final Deque<IngestFrame> framesToAdmit = new ArrayDeque<>();
+        private boolean admitting;
+        private boolean receivesSuspended;
+
+        // Only touched while admitting, which never runs concurrently
+        private long lastAdmittedSeq = Long.MIN_VALUE;
+        private long refusedSeq = Long.MIN_VALUE;
+        private boolean refusing;
+
+        // Admitted frames in receive order, waiting for their logs to be committed. Guarded by itself.
+        private final Deque<PendingFrame> pendingFrames = new ArrayDeque<>();
+        private volatile long ackedSeq = Long.MIN_VALUE;
+        private volatile boolean failed;
+        private final AtomicBoolean ackScheduled = new AtomicBoolean();
+
+        private Connection(@NotNull WebSocketChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        protected long getMaxTextBufferSize() {
+            return maxMessageBytes;
+        }
+
+        @Override
+        protected long getMaxBinaryBufferSize() {
+            return maxMessageBytes;
+        }
+
+        @Override
+        protected void onFullTextMessage(WebSocketChannel channel, BufferedTextMessage message) {
+            IngestFrame frame;
+            try {
+                frame = jsonMapper.readValue(message.getData(), IngestFrame.class);
+            } catch (IOException e) {
+                closeInvalid("Invalid JSON frame format!");
+                return;
+            }
+            receive(frame);
+        }
+
+        @Override
+        protected void onFullBinaryMessage(WebSocketChannel channel, BufferedBinaryMessage message) {
+            // Undertow still hands out the deprecated XNIO Pooled type, so it is left unnamed
+            var data = message.getData();
+            IngestFrame frame;
+            try {
+                ByteBuffer payload = WebSockets.mergeBuffers(data.getResource());
+                frame = cborMapper.readValue(new ByteBufferBackedInputStream(payload), IngestFrame.class);
+            } catch (IOException e) {
+                closeInvalid("Invalid CBOR frame format!");
+                return;
+            } finally {
+                data.free();
+            }
+            receive(frame);
+        }
+
+        /**
+         * A frame that can't be parsed would never be acked, so close the connection instead of skipping it.
+         */
+        private void closeInvalid(@NotNull String message) {
+            WebSockets.sendClose(CloseMessage.MSG_CONTAINS_INVALID_DATA, message, channel, null);
+        }
+
+        private void receive(@NotNull IngestFrame frame) {
+            if (frame.logs() == null) {
+                closeInvalid("Frame must contain 'logs'.");
+                return;
+            }
+            receivedFrames.increment();
+            boolean startAdmitting;
+            synchronized (this) {
+                framesToAdmit.add(frame);
+                if (framesToAdmit.size() >= maxReceivedFrames && !receivesSuspended) {
+                    receivesSuspended = true;
+                    channel.suspendReceives();
+                }
+                startAdmitting = !admitting;
+                admitting = true;
+            }
+            if (startAdmitting)
+                vt.execute(this::admitReceivedFrames);
+        }
+
+        private void admitReceivedFrames() {
+            while (true) {
+                IngestFrame frame;
+                synchronized (this) {
+                    frame = framesToAdmit.poll();
+                    if (frame == null) {
+                        admitting = false;
+                        return;
+                    }
+                    if (receivesSuspended && framesToAdmit.size() <= maxReceivedFrames / 2) {
+                        receivesSuspended = false;
+                        channel.resumeReceives();
+                    }
+                }
+                try {
+                    admit(frame);
+                } catch (RuntimeException e) {
+                    log.error("Failed to admit frame {} of the WebSocket ingest channel: {}", frame.seq(), e.getMessage());
+                    WebSockets.sendClose(CloseMessage.UNEXPECTED_ERROR, "Ingest failed.", channel, null);
+                }
+            }
+        }
+
+        private void admit(@NotNull IngestFrame frame) {
+            // Nothing admitted after a failed frame can be acked anymore, the plugin resends it after reconnecting
+            if (failed)
+                return;
+            long seq = frame.seq();
+            // After a refusal everything is resent from the refused frame on, so drop what the client sent after it
+            if (refusing && seq != refusedSeq)
+                return;
+            if (seq <= lastAdmittedSeq) {
+                WebSockets.sendText("{\"status\":\"error\",\"message\":\"Sequence numbers must increase.\","
+                        + "\"seq\":" + seq + "}", channel, null);
+                return;
+            }
+
+            List<LogDTO> logs = frame.logs();
+            PendingFrame pendingFrame = new PendingFrame(seq, logs.size());
+            for (LogDTO log : logs) {
+                log.generateLogUUID();
+                log.setCommitListener(pendingFrame);
+            }
+            // Queued before admission, since a flush worker may commit the logs before addLogs returns
+            synchronized (pendingFrames) {
+                pendingFrames.add(pendingFrame);
+            }
+
+            if (!logs.isEmpty() && !batcher.addLogs(logs)) {
+                synchronized (pendingFrames) {
+                    pendingFrames.removeLastOccurrence(pendingFrame);
+                }
+                refusedFrames.increment();
+                refusing = true;
+                refusedSeq = seq;
+                WebSockets.sendText("{\"nack\":" + seq + ",\"message\":\"Ingest queue is full, retry later.\","
+                        + "\"retryAfterSeconds\":" + retryAfterSeconds + "}", channel, null);
+                return;
+            }
+            refusing = false;
+            lastAdmittedSeq = seq;
+            if (logs.isEmpty())
+                pendingFrame.onCommitted();
+        }
+
+        /**
+         * Pop every committed frame off the head of the pending frames, and ack the last one popped.
+         * A failed frame at the head is never popped, so no ack covers it.
+         * Acks are sent from the IO thread, where a burst of commits collapses into a single ack.
+         */
+        private void advanceAck() {
+            long acked = Long.MIN_VALUE;
+            boolean headFailed;
+            synchronized (pendingFrames) {
+                PendingFrame head;
+                while ((head = pendingFrames.peek()) != null && head.isCommitted()) {
+                    pendingFrames.poll();
+                    acked = head.seq;
+                }
+                headFailed = head != null && head.isFailed();
+                if (acked != Long.MIN_VALUE)
+                    ackedSeq = acked;
+            }
+            if (headFailed)
+                failed = true;
+            if ((acked != Long.MIN_VALUE || headFailed) && ackScheduled.compareAndSet(false, true))
+                channel.getIoThread().execute(this::sendAck);
+        }
+
+        private void sendAck() {
+            ackScheduled.set(false);
+            if (!channel.isOpen())
+                return;
+            long acked = ackedSeq;
+            if (acked != Long.MIN_VALUE)
+                WebSockets.sendText("{\"ack\":" + acked + "}", channel, null);
+            if (failed)
+                WebSockets.sendClose(CloseMessage.UNEXPECTED_ERROR,
+                        "Logs could not be stored, resend after the last ack.", channel, null);
+        }
+
+        /**
+         * Counts down the uncommitted logs of one admitted frame. A single failed log fails the whole frame.
+         */
+        private final class PendingFrame implements LogDTO.CommitListener {
+            private final long seq;
+            private final AtomicInteger uncommittedLogs;
+            private final AtomicBoolean failed = new AtomicBoolean();
+
+            private PendingFrame(long seq, int logs) {
+                this.seq = seq;
+                // A frame without logs counts as 1 log, committed as soon as the frame is admitted
+                this.uncommittedLogs = new AtomicInteger(Math.max(1, logs));
+            }
+
+            private boolean isCommitted() {
+                return uncommittedLogs.get() == 0;
+            }
+
+            private boolean isFailed() {
+                return failed.get();
+            }
+
+            @Override
+            public void onCommitted() {
+                if (uncommittedLogs.decrementAndGet() == 0)
+                    advanceAck();
+            }
+
+            @Override
+            public void onFailed() {
+                if (failed.compareAndSet(false, true))
+                    advanceAck();
+            }
+        }
+    }
+}
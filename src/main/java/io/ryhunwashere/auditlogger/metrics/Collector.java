@@ -0,0 +1,38 @@
+package io.ryhunwashere.auditlogger.metrics;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Writes the samples of one labelled metric in the Prometheus text exposition format.
+ */
+interface Collector {
+    /**
+     * @param labels Labels of the metric without the braces, empty if it has none.
+     */
+    void collect(@NotNull StringBuilder out, @NotNull String name, @NotNull String labels);
+
+    static void sample(@NotNull StringBuilder out, @NotNull String name, @NotNull String labels, long value) {
+        appendName(out, name, labels).append(' ').append(value).append('\n');
+    }
+
+    static void sample(@NotNull StringBuilder out, @NotNull String name, @NotNull String labels, double value) {
+        appendName(out, name, labels).append(' ').append(formatDouble(value)).append('\n');
+    }
+
+    static @NotNull StringBuilder appendName(@NotNull StringBuilder out, @NotNull String name, @NotNull String labels) {
+        out.append(name);
+        if (!labels.isEmpty())
+            out.append('{').append(labels).append('}');
+        return out;
+    }
+
+    static @NotNull String formatDouble(double value) {
+        if (Double.isNaN(value))
+            return "NaN";
+        if (Double.isInfinite(value))
+            return value > 0 ? "+Inf" : "-Inf";
+        if (value == Math.rint(value) && Math.abs(value) < 1e15)
+            return Long.toString((long) value);
+        return Double.toString(value);
+    }
+}
@@ -0,0 +1,29 @@
+package io.ryhunwashere.auditlogger.metrics;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.atomic.LongAdder;
+
+public final class Counter implements Collector {
+    private final LongAdder total = new LongAdder();
+
+    Counter() {
+    }
+
+    public void increment() {
+        total.increment();
+    }
+
+    public void add(long amount) {
+        total.add(amount);
+    }
+
+    public long total() {
+        return total.sum();
+    }
+
+    @Override
+    public void collect(@NotNull StringBuilder out, @NotNull String name, @NotNull String labels) {
+        Collector.sample(out, name, labels, total.sum());
+    }
+}
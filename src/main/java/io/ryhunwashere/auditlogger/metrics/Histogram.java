@@ -0,0 +1,57 @@
+package io.ryhunwashere.auditlogger.metrics;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram with fixed buckets. Observations only increment the counter of their own bucket,
+ * buckets are made cumulative when scraped.
+ */
+public final class Histogram implements Collector {
+    private final double[] upperBounds;
+    private final LongAdder[] bucketCounts;  // last bucket is +Inf
+    private final DoubleAdder sum = new DoubleAdder();
+
+    Histogram(double @NotNull [] upperBounds) {
+        for (int i = 1; i < upperBounds.length; i++) {
+            if (upperBounds[i] <= upperBounds[i - 1])
+                throw new IllegalArgumentException("Histogram buckets must be ascending: " + Arrays.toString(upperBounds));
+        }
+        this.upperBounds = upperBounds.clone();
+        this.bucketCounts = new LongAdder[upperBounds.length + 1];
+        for (int i = 0; i < bucketCounts.length; i++)
+            bucketCounts[i] = new LongAdder();
+    }
+
+    public void observe(double value) {
+        int index = Arrays.binarySearch(upperBounds, value);
+        // An exact match belongs to its bucket (le is inclusive), otherwise take the insertion point
+        bucketCounts[index >= 0 ? index : -index - 1].increment();
+        sum.add(value);
+    }
+
+    /**
+     * Observe a duration measured with {@link System#nanoTime()}, in seconds.
+     */
+    public void observeNanos(long nanos) {
+        observe(nanos / (double) TimeUnit.SECONDS.toNanos(1));
+    }
+
+    @Override
+    public void collect(@NotNull StringBuilder out, @NotNull String name, @NotNull String labels) {
+        String bucketName = name + "_bucket";
+        String labelPrefix = labels.isEmpty() ? "" : labels + ",";
+        long cumulative = 0L;
+        for (int i = 0; i < bucketCounts.length; i++) {
+            cumulative += bucketCounts[i].sum();
+            String le = i < upperBounds.length ? Collector.formatDouble(upperBounds[i]) : "+Inf";
+            Collector.sample(out, bucketName, labelPrefix + "le=\"" + le + "\"", cumulative);
+        }
+        Collector.sample(out, name + "_sum", labels, sum.sum());
+        Collector.sample(out, name + "_count", labels, cumulative);
+    }
+}
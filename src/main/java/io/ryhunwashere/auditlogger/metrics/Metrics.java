@@ -0,0 +1,129 @@
+package io.ryhunwashere.auditlogger.metrics;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.DoubleSupplier;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Process-wide metrics registry, rendered in the Prometheus text exposition format by {@link #scrape()}.<br>
+ * Counters & histograms record into {@link java.util.concurrent.atomic.LongAdder}s, so recording never locks.
+ * Registering returns the existing metric for the same name & labels, but lookups are meant for setup:
+ * keep the returned instance and record into it on hot paths.
+ */
+public final class Metrics {
+    private enum Type {
+        COUNTER, GAUGE, HISTOGRAM
+    }
+
+    private record Family(String help, Type type, Map<String, Collector> children) {
+    }
+
+    // Sorted by name, so every scrape lists metrics in the same order
+    private static final Map<String, Family> families = new ConcurrentSkipListMap<>();
+
+    private Metrics() {
+    }
+
+    public static @NotNull Counter counter(@NotNull String name, @NotNull String help) {
+        return counter(name, help, "");
+    }
+
+    /**
+     * @param labels Labels built by {@link #labels(String...)}.
+     */
+    public static @NotNull Counter counter(@NotNull String name, @NotNull String help, @NotNull String labels) {
+        return (Counter) register(name, help, Type.COUNTER, labels, Counter::new);
+    }
+
+    /**
+     * Expose a monotonic total that is already counted elsewhere.
+     */
+    public static void counter(@NotNull String name, @NotNull String help, @NotNull LongSupplier total) {
+        register(name, help, Type.COUNTER, "",
+                () -> (out, metricName, labels) -> Collector.sample(out, metricName, labels, total.getAsLong()));
+    }
+
+    public static void gauge(@NotNull String name, @NotNull String help, @NotNull DoubleSupplier value) {
+        gauge(name, help, "", value);
+    }
+
+    public static void gauge(@NotNull String name, @NotNull String help, @NotNull String labels,
+                             @NotNull DoubleSupplier value) {
+        register(name, help, Type.GAUGE, labels,
+                () -> (out, metricName, sampleLabels) ->
+                        Collector.sample(out, metricName, sampleLabels, value.getAsDouble()));
+    }
+
+    /**
+     * @param upperBounds Ascending upper bounds of the buckets, the {@code +Inf} bucket is implied.
+     */
+    public static @NotNull Histogram histogram(@NotNull String name, @NotNull String help, double @NotNull [] upperBounds) {
+        return histogram(name, help, upperBounds, "");
+    }
+
+    public static @NotNull Histogram histogram(@NotNull String name, @NotNull String help,
+                                               double @NotNull [] upperBounds, @NotNull String labels) {
+        return (Histogram) register(name, help, Type.HISTOGRAM, labels, () -> new Histogram(upperBounds));
+    }
+
+    /**
+     * @param namesAndValues Label names each followed by its value, e.g. {@code "route", "GET /logs"}.
+     * @return Labels in exposition format without the braces, e.g. {@code route="GET /logs"}.
+     */
+    public static @NotNull String labels(@NotNull String... namesAndValues) {
+        if (namesAndValues.length % 2 != 0)
+            throw new IllegalArgumentException("Every label name needs a value.");
+        StringBuilder labels = new StringBuilder();
+        for (int i = 0; i < namesAndValues.length; i += 2) {
+            if (i > 0)
+                labels.append(',');
+            labels.append(namesAndValues[i]).append("=\"");
+            escapeLabelValue(labels, namesAndValues[i + 1]);
+            labels.append('"');
+        }
+        return labels.toString();
+    }
+
+    private static void escapeLabelValue(@NotNull StringBuilder out, @NotNull String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\\' -> out.append("\\\\");
+                case '"' -> out.append("\\\"");
+                case '\n' -> out.append("\\n");
+                default -> out.append(c);
+            }
+        }
+    }
+
+    private static @NotNull Collector register(@NotNull String name, @NotNull String help, @NotNull Type type,
+                                               @NotNull String labels,
+                                               @NotNull Supplier<Collector> factory) {
+        Family family = families.computeIfAbsent(name, key -> new Family(help, type, new ConcurrentHashMap<>()));
+        if (family.type() != type)
+            throw new IllegalArgumentException("Metric " + name + " is already registered as a " + family.type());
+        return family.children().computeIfAbsent(labels, key -> factory.get());
+    }
+
+    /**
+     * @return Every registered metric in the Prometheus text exposition format (version 0.0.4).
+     */
+    public static @NotNull String scrape() {
+        StringBuilder out = new StringBuilder(4096);
+        for (Map.Entry<String, Family> entry : families.entrySet()) {
+            String name = entry.getKey();
+            Family family = entry.getValue();
+            out.append("# HELP ").append(name).append(' ').append(family.help()).append('\n');
+            out.append("# TYPE ").append(name).append(' ')
+                    .append(family.type().name().toLowerCase()).append('\n');
+            for (Map.Entry<String, Collector> child : family.children().entrySet())
+                child.getValue().collect(out, name, child.getKey());
+        }
+        return out.toString();
+    }
+}
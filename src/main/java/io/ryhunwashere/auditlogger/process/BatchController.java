@@ -0,0 +1,149 @@
+package io.ryhunwashere.auditlogger.process;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Picks the size & linger time of the next flush batch from what previous flushes observed:
+ * flush duration, queue depth after draining and the arrival rate of accepted logs.<br>
+ * Linger is the longest a flush worker waits for a batch to fill after its first log arrived,
+ * so a trickle of logs is flushed within the linger time instead of waiting for a full batch.
+ * Both stay within the configured bounds in every mode.
+ */
+public class BatchController {
+    public enum Mode {
+        // Configured batch size, always lingering for the maximum linger time
+        FIXED,
+
+        // Keep the time from a log's acceptance to its commit (linger + flush) under the latency SLO
+        LATENCY,
+
+        // Grow or shrink full batches towards the size that flushes the most logs per second
+        THROUGHPUT
+    }
+
+    // Weight of the newest observation in the moving averages
+    private static final double EWMA_WEIGHT = 0.2;
+    private static final double GROWTH = 1.25;
+    private static final double SHRINK = 0.8;
+
+    private final Mode mode;
+    private final int minBatchSize;
+    private final int maxBatchSize;
+    private final long minLingerNanos;
+    private final long maxLingerNanos;
+    private final long latencySloNanos;
+    private final LongSupplier acceptedLogs;
+
+    private volatile int batchSize;
+    private volatile long lingerNanos;
+
+    // Guarded by this
+    private double avgFlushNanos;
+    private double avgArrivalsPerSecond;
+    private long lastAcceptedLogs;
+    private long lastObservedAt;
+    private double lastLogsPerSecond;
+    private int direction = 1;
+
+    /**
+     * @param acceptedLogs Running total of accepted logs, sampled to estimate the arrival rate.
+     */
+    public BatchController(@NotNull Mode mode, int initialBatchSize, int minBatchSize, int maxBatchSize,
+                           long minLingerMillis, long maxLingerMillis, long latencySloMillis,
+                           @NotNull LongSupplier acceptedLogs) {
+        if (minBatchSize < 1 || maxBatchSize < minBatchSize)
+            throw new IllegalArgumentException("Invalid batch size bounds: " + minBatchSize + " to " + maxBatchSize);
+        if (minLingerMillis < 0 || maxLingerMillis < minLingerMillis)
+            throw new IllegalArgumentException("Invalid linger bounds: " + minLingerMillis + " to " + maxLingerMillis);
+        this.mode = mode;
+        this.minBatchSize = minBatchSize;
+        this.maxBatchSize = maxBatchSize;
+        this.minLingerNanos = TimeUnit.MILLISECONDS.toNanos(minLingerMillis);
+        this.maxLingerNanos = TimeUnit.MILLISECONDS.toNanos(maxLingerMillis);
+        this.latencySloNanos = TimeUnit.MILLISECONDS.toNanos(latencySloMillis);
+        this.acceptedLogs = acceptedLogs;
+        this.batchSize = Math.clamp(initialBatchSize, minBatchSize, maxBatchSize);
+        // Until the first flush is observed, leave half of the SLO for the flush itself
+        this.lingerNanos = mode == Mode.LATENCY
+                ? Math.clamp(latencySloNanos / 2, minLingerNanos, maxLingerNanos)
+                : maxLingerNanos;
+        this.lastAcceptedLogs = acceptedLogs.getAsLong();
+        this.lastObservedAt = System.nanoTime();
+    }
+
+    public int batchSize() {
+        return batchSize;
+    }
+
+    public long lingerNanos() {
+        return lingerNanos;
+    }
+
+    public @NotNull Mode mode() {
+        return mode;
+    }
+
+    /**
+     * Called by a flush worker after every committed batch.
+     *
+     * @param flushedBatchSize Logs in the batch.
+     * @param flushNanos       Time spent inserting & committing the batch.
+     * @param queueDepth       Logs left in the queue once the batch was committed.
+     */
+    public synchronized void onFlushed(int flushedBatchSize, long flushNanos, int queueDepth) {
+        if (mode == Mode.FIXED || flushedBatchSize <= 0)
+            return;
+
+        long now = System.nanoTime();
+        long accepted = acceptedLogs.getAsLong();
+        double elapsedSeconds = (now - lastObservedAt) / (double) TimeUnit.SECONDS.toNanos(1);
+        if (elapsedSeconds > 0) {
+            double arrivalsPerSecond = (accepted - lastAcceptedLogs) / elapsedSeconds;
+            avgArrivalsPerSecond = average(avgArrivalsPerSecond, arrivalsPerSecond);
+        }
+        lastAcceptedLogs = accepted;
+        lastObservedAt = now;
+        avgFlushNanos = average(avgFlushNanos, flushNanos);
+
+        int target = batchSize;
+        if (mode == Mode.LATENCY) {
+            // A backlog fills batches without lingering, so bigger batches drain it faster while they fit the SLO
+            if (avgFlushNanos > latencySloNanos / 2.0)
+                target = (int) (target * SHRINK);
+            else if (queueDepth >= target)
+                target = (int) Math.ceil(target * GROWTH);
+        } else {
+            // Only full batches say something about the best size, partial ones were cut short by the linger
+            if (flushedBatchSize >= target * SHRINK) {
+                double logsPerSecond = flushedBatchSize / (flushNanos / (double) TimeUnit.SECONDS.toNanos(1));
+                // Keep stepping while it pays off, turn around once it gets worse, so the size hovers at the best one
+                if (logsPerSecond < lastLogsPerSecond)
+                    direction = -direction;
+                lastLogsPerSecond = logsPerSecond;
+                target = direction > 0 ? (int) Math.ceil(target * GROWTH) : (int) (target * SHRINK);
+            }
+        }
+        batchSize = Math.clamp(target, minBatchSize, maxBatchSize);
+        lingerNanos = Math.clamp(nextLingerNanos(), minLingerNanos, maxLingerNanos);
+    }
+
+    /**
+     * Linger only as long as the arrival rate needs to fill a batch, and in latency mode
+     * no longer than what the SLO leaves after the flush itself.
+     */
+    private long nextLingerNanos() {
+        long fillNanos = avgArrivalsPerSecond > 0
+                ? (long) (batchSize / avgArrivalsPerSecond * TimeUnit.SECONDS.toNanos(1))
+                : maxLingerNanos;
+        if (mode == Mode.LATENCY)
+            return Math.min(fillNanos, latencySloNanos - (long) avgFlushNanos);
+        return fillNanos;
+    }
+
+    private static double average(double average, double observation) {
+        return average == 0 ? observation : average + EWMA_WEIGHT * (observation - average);
+    }
+}
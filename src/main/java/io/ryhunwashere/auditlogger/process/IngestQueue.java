@@ -0,0 +1,139 @@
+package io.ryhunwashere.auditlogger.process;
+
+import io.ryhunwashere.auditlogger.dto.LogDTO;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Bounded buffer between the HTTP handlers and the flush workers.<br>
+ * What happens when the buffer is full depends on the {@link OverflowPolicy}.
+ * Once any log of a request has been enqueued, the rest of that request is never dropped:
+ * logs that no longer fit are handed to the spill handler instead.
+ */
+public class IngestQueue {
+    public enum OverflowPolicy {
+        // Refuse the whole request so the client can retry later
+        REJECT,
+
+        // Wait up to a timeout for free capacity, then refuse
+        BLOCK,
+
+        // Accept everything, writing what doesn't fit to the local fallback DB
+        SPILL
+    }
+
+    private final BlockingQueue<LogDTO> queue;
+    private final int capacity;
+    private final OverflowPolicy overflowPolicy;
+    private final long blockTimeoutMillis;
+    private final Consumer<List<LogDTO>> spillHandler;
+
+    public IngestQueue(int capacity, OverflowPolicy overflowPolicy, long blockTimeoutMillis,
+                       Consumer<List<LogDTO>> spillHandler) {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("Queue capacity must be positive, got: " + capacity);
+        this.queue = new LinkedBlockingQueue<>(capacity);
+        this.capacity = capacity;
+        this.overflowPolicy = overflowPolicy;
+        this.blockTimeoutMillis = blockTimeoutMillis;
+        this.spillHandler = spillHandler;
+    }
+
+    /**
+     * Admit logs into the queue according to the overflow policy.
+     *
+     * @param logs Logs to be admitted.
+     * @return True if the logs were accepted (queued or spilled), false if the request was refused.
+     */
+    public boolean offer(@NotNull List<LogDTO> logs) {
+        if (logs.isEmpty())
+            return true;
+
+        switch (overflowPolicy) {
+            case REJECT -> {
+                if (queue.remainingCapacity() < logs.size())
+                    return false;
+                enqueueOrSpill(logs, 0);
+                return true;
+            }
+            case BLOCK -> {
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(blockTimeoutMillis);
+                int i = 0;
+                try {
+                    for (; i < logs.size(); i++) {
+                        long remaining = deadline - System.nanoTime();
+                        if (!queue.offer(logs.get(i), Math.max(remaining, 0L), TimeUnit.NANOSECONDS)) {
+                            if (i == 0)
+                                return false;
+                            spill(logs.subList(i, logs.size()));
+                            return true;
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    // Once a log is enqueued the request is accepted, so the rest is never dropped
+                    if (i > 0)
+                        enqueueOrSpill(logs, i);
+                    Thread.currentThread().interrupt();
+                    return i > 0;
+                }
+                return true;
+            }
+            case SPILL -> {
+                enqueueOrSpill(logs, 0);
+                return true;
+            }
+            default -> throw new IllegalStateException("Unknown overflow policy: " + overflowPolicy);
+        }
+    }
+
+    /**
+     * Enqueue logs of a request that has already been partially accepted.
+     * Never refuses: whatever doesn't fit is spilled instead.
+     */
+    public void offerRemainder(@NotNull List<LogDTO> logs) {
+        enqueueOrSpill(logs, 0);
+    }
+
+    private void enqueueOrSpill(@NotNull List<LogDTO> logs, int fromIndex) {
+        for (int i = fromIndex; i < logs.size(); i++) {
+            if (!queue.offer(logs.get(i))) {
+                spill(logs.subList(i, logs.size()));
+                return;
+            }
+        }
+    }
+
+    private void spill(@NotNull List<LogDTO> overflow) {
+        spillHandler.accept(List.copyOf(overflow));
+    }
+
+    public LogDTO take() throws InterruptedException {
+        return queue.take();
+    }
+
+    public LogDTO poll(long timeout, TimeUnit unit) throws InterruptedException {
+        return queue.poll(timeout, unit);
+    }
+
+    public int drainTo(Collection<? super LogDTO> batch, int maxElements) {
+        return queue.drainTo(batch, maxElements);
+    }
+
+    public int size() {
+        return queue.size();
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public OverflowPolicy overflowPolicy() {
+        return overflowPolicy;
+    }
+}
@@ -1,61 +1,198 @@
 package io.ryhunwashere.auditlogger.process;
 
 import io.ryhunwashere.auditlogger.dao.LogsDAO;
+import io.ryhunwashere.auditlogger.dao.ResultStreamTarget;
+import io.ryhunwashere.auditlogger.dto.LogCursor;
 import io.ryhunwashere.auditlogger.dto.LogDTO;
+import io.ryhunwashere.auditlogger.dto.StatsQuery;
+import io.ryhunwashere.auditlogger.metrics.Counter;
+import io.ryhunwashere.auditlogger.metrics.Histogram;
+import io.ryhunwashere.auditlogger.metrics.Metrics;
+import io.ryhunwashere.auditlogger.util.Config;
+import io.ryhunwashere.auditlogger.util.PropsLoader;
+import io.ryhunwashere.auditlogger.wal.WriteAheadLog;
 import org.jetbrains.annotations.NotNull;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.sql.SQLException;
 import java.time.Duration;
 import java.time.Instant;
 import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
 
 public class LogsManager {
     private static final Logger log = LoggerFactory.getLogger(LogsManager.class);
-    private final BlockingQueue<LogDTO> queue = new LinkedBlockingQueue<>();
+    private final IngestQueue queue;
 
     private final LogsDAO dao;
     private final ScheduledExecutorService scheduler;
     private final ExecutorService vt;
-    private final int batchSize;
+    private final BatchController batchController;
+    private final int flushWorkers;
+    private final WriteAheadLog wal;    // null if the WAL is disabled
+    private final QueryCache<QueryKey> queryCache;    // null if the query cache is disabled
+    private final RecentLogsBuffer recentLogs;    // null if the hot tier is disabled
+    private final Duration closedWindowGrace;
+
+    // Every log accepted before this instant has been committed to the main DB
+    private volatile Instant flushWatermark = Instant.EPOCH;
+    // Set once shutdown starts: flush workers stop lingering & exit after their current batch
+    private volatile boolean stopping;
+    private final AtomicInteger inFlightBatches = new AtomicInteger();
     private AtomicInteger fallbackLogsCount;  // How many logs left in the local fallback database
+    private volatile long lastReplayEpochSeconds;
+
+    private final Counter acceptedLogs = Metrics.counter("auditlogger_ingest_accepted_logs_total",
+            "Logs accepted into the ingest queue or spilled to the local fallback DB.");
+    private final Counter rejectedLogs = Metrics.counter("auditlogger_ingest_rejected_logs_total",
+            "Logs of requests refused because the ingest queue was full.");
+    private final Histogram batchSizes = Metrics.histogram("auditlogger_flush_batch_size",
+            "Logs per batch flushed into the main DB.", BATCH_SIZE_BUCKETS);
+    private final Histogram flushLatency = Metrics.histogram("auditlogger_flush_duration_seconds",
+            "Time to insert & commit one batch into the main DB.", FLUSH_LATENCY_BUCKETS_SECONDS);
+    private final Counter flushedLogs = Metrics.counter("auditlogger_flushed_logs_total",
+            "Logs committed into the main DB by the flush workers.");
+    private final Counter flushFailures = Metrics.counter("auditlogger_flush_failures_total",
+            "Batches that failed to flush into the main DB and went to the local fallback DB.");
+    private final Counter fallbackInsertedLogs = Metrics.counter("auditlogger_fallback_inserted_logs_total",
+            "Logs written into the local fallback DB.");
+    private final Counter replayedLogs = Metrics.counter("auditlogger_replay_logs_total",
+            "Logs replayed from the local fallback DB into the main DB.");
+    private final Counter replayFailures = Metrics.counter("auditlogger_replay_failures_total",
+            "Replays of the local fallback DB that failed.");
 
-    private static final int MIN_BATCH_SIZE = 100;
-    private static final int MAX_BATCH_SIZE = 500;
+    private static final int DEFAULT_MIN_BATCH_SIZE = 100;
+    private static final int DEFAULT_MAX_BATCH_SIZE = 500;
+    private static final long DEFAULT_MIN_LINGER_MILLIS = 10L;
+    private static final long DEFAULT_MAX_LINGER_MILLIS = 3000L;
+    private static final long DEFAULT_LATENCY_SLO_MILLIS = 1000L;
     private static final long SHUTDOWN_TIMEOUT = 30L;
-    private static final long FLUSH_INTERVAL = 2L;
+    private static final long FLUSH_START_DELAY = 5L;
+    private static final long IDLE_POLL_MILLIS = 500L;
     private static final long LOCAL_FLUSH_INTERVAL = 10L;
+    private static final int DEFAULT_QUEUE_CAPACITY = 100_000;
+    private static final long DEFAULT_BLOCK_TIMEOUT_MILLIS = 2000L;
+    private static final int DEFAULT_FLUSH_WORKERS = 1;
+    private static final int DEFAULT_WAL_SEGMENT_SIZE_MB = 64;
+    private static final int DEFAULT_WAL_FREE_SEGMENTS = 2;
+    private static final int DEFAULT_CACHE_MAX_ENTRIES = 1000;
+    private static final long DEFAULT_CACHE_TTL_SECONDS = 30L;
+    private static final long DEFAULT_CLOSED_WINDOW_GRACE_SECONDS = 60L;
+    private static final int DEFAULT_HOT_TIER_CAPACITY = 200_000;
+    private static final long DEFAULT_HOT_TIER_MINUTES = 10L;
+    private static final double[] BATCH_SIZE_BUCKETS = {1, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000};
+    private static final double[] FLUSH_LATENCY_BUCKETS_SECONDS =
+            {0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10};
+
+    private sealed interface QueryKey {
+    }
+
+    private record PlayerQueryKey(UUID playerUuid, Instant since, Instant until, int limit,
+                                  LogCursor after) implements QueryKey {
+    }
+
+    private record AreaQueryKey(String world, double radius, double x, double z, boolean circular,
+                                Instant since, Instant until, int limit, LogCursor after) implements QueryKey {
+    }
 
     public LogsManager(LogsDAO dao, ExecutorService virtualThread, int batchSize) {
         this.dao = dao;
         this.vt = virtualThread;
 
-        if (batchSize < MIN_BATCH_SIZE) {
+        Config config = PropsLoader.getConfig("auditconfig");
+        int minBatchSize = Math.max(1, config.getInt("flush.minBatchSize", DEFAULT_MIN_BATCH_SIZE));
+        int maxBatchSize = Math.max(minBatchSize, config.getInt("flush.maxBatchSize", DEFAULT_MAX_BATCH_SIZE));
+        int initialBatchSize;
+        if (batchSize < minBatchSize) {
             System.out.println("Batch size setting (" + batchSize + ") is too low!");
-            System.out.println("Batch size is set to minimum size: " + MIN_BATCH_SIZE);
-            this.batchSize = MIN_BATCH_SIZE;
-        } else if (batchSize > MAX_BATCH_SIZE) {
+            System.out.println("Batch size is set to minimum size: " + minBatchSize);
+            initialBatchSize = minBatchSize;
+        } else if (batchSize > maxBatchSize) {
             System.out.println("Batch size setting (" + batchSize + ") is too high!");
-            System.out.println("Batch size is set to maximum size: " + MAX_BATCH_SIZE);
-            this.batchSize = MAX_BATCH_SIZE;
+            System.out.println("Batch size is set to maximum size: " + maxBatchSize);
+            initialBatchSize = maxBatchSize;
         } else {
-            this.batchSize = batchSize;
-            System.out.println("Batch size set to: " + this.batchSize);
+            initialBatchSize = batchSize;
+            System.out.println("Batch size set to: " + initialBatchSize);
         }
+        BatchController.Mode flushMode = BatchController.Mode.valueOf(
+                config.getString("flush.mode", "fixed").trim().toUpperCase());
+        long minLingerMillis = config.getLong("flush.minLingerMillis", DEFAULT_MIN_LINGER_MILLIS);
+        long maxLingerMillis = config.getLong("flush.maxLingerMillis", DEFAULT_MAX_LINGER_MILLIS);
+        long latencySloMillis = config.getLong("flush.latencySloMillis", DEFAULT_LATENCY_SLO_MILLIS);
+        batchController = new BatchController(flushMode, initialBatchSize, minBatchSize, maxBatchSize,
+                minLingerMillis, maxLingerMillis, latencySloMillis, acceptedLogs::total);
+        System.out.println("Flush mode set to: " + flushMode + " (batches of " + minBatchSize + " to " + maxBatchSize
+                + " logs, linger " + minLingerMillis + " to " + maxLingerMillis + "ms"
+                + (flushMode == BatchController.Mode.LATENCY ? ", latency SLO " + latencySloMillis + "ms)" : ")"));
 
-        // Schedulers for flushing to main DB & flushing from local DB to main DB
-        scheduler = Executors.newScheduledThreadPool(4);
-        scheduler.scheduleWithFixedDelay(this::flushLogs, 5, FLUSH_INTERVAL, TimeUnit.SECONDS);
-        scheduler.scheduleWithFixedDelay(this::flushLocalLogs, 5, LOCAL_FLUSH_INTERVAL, TimeUnit.SECONDS);
+        int queueCapacity = config.getInt("queue.capacity", DEFAULT_QUEUE_CAPACITY);
+        IngestQueue.OverflowPolicy overflowPolicy = IngestQueue.OverflowPolicy.valueOf(
+                config.getString("queue.overflowPolicy", "reject").trim().toUpperCase());
+        long blockTimeoutMillis = config.getLong("queue.blockTimeoutMillis", DEFAULT_BLOCK_TIMEOUT_MILLIS);
+        queue = new IngestQueue(queueCapacity, overflowPolicy, blockTimeoutMillis, this::insertIntoLocal);
+        System.out.println("Ingest queue capacity set to: " + queueCapacity + " (overflow policy: " + overflowPolicy + ")");
+        wal = openWriteAheadLog(config);
 
-        // Create new table partition every start of month
-        scheduleMonthlyPartition();
+        if (Boolean.parseBoolean(config.getString("cache.enabled", "false"))) {
+            int maxEntries = config.getInt("cache.maxEntries", DEFAULT_CACHE_MAX_ENTRIES);
+            long ttlSeconds = config.getLong("cache.ttlSeconds", DEFAULT_CACHE_TTL_SECONDS);
+            queryCache = new QueryCache<>(maxEntries, TimeUnit.SECONDS.toNanos(ttlSeconds));
+            System.out.println("Query cache enabled with " + maxEntries + " entries & " + ttlSeconds + "s TTL.");
+        } else {
+            queryCache = null;
+        }
+        closedWindowGrace = Duration.ofSeconds(
+                config.getLong("cache.closedWindowGraceSeconds", DEFAULT_CLOSED_WINDOW_GRACE_SECONDS));
+
+        if (Boolean.parseBoolean(config.getString("hotTier.enabled", "false"))) {
+            int capacity = config.getInt("hotTier.capacity", DEFAULT_HOT_TIER_CAPACITY);
+            long minutes = config.getLong("hotTier.minutes", DEFAULT_HOT_TIER_MINUTES);
+            recentLogs = new RecentLogsBuffer(capacity, TimeUnit.MINUTES.toMillis(minutes));
+            System.out.println("Hot tier enabled for the last " + minutes + " minutes (up to " + capacity + " logs).");
+        } else {
+            recentLogs = null;
+        }
+
+        // Leave at least 1 pooled connection free for queries & local DB flushing
+        int maxPoolSize = config.getInt("dataSource.maximumPoolSize");
+        int maxFlushWorkers = Math.max(1, maxPoolSize - 1);
+        int configuredFlushWorkers = config.getInt("db.flushWorkers", DEFAULT_FLUSH_WORKERS);
+        if (configuredFlushWorkers < 1) {
+            System.out.println("Flush workers setting (" + configuredFlushWorkers + ") is too low!");
+            this.flushWorkers = 1;
+        } else if (configuredFlushWorkers > maxFlushWorkers) {
+            System.out.println("Flush workers setting (" + configuredFlushWorkers + ") exceeds the connection pool!");
+            this.flushWorkers = maxFlushWorkers;
+        } else {
+            this.flushWorkers = configuredFlushWorkers;
+        }
+        System.out.println("Flush workers set to: " + this.flushWorkers);
+
+        // Schedulers for flushing to main DB & flushing from local DB to main DB.
+        // Every flush worker drains the shared queue on its own thread with its own pooled connection.
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(flushWorkers + 3,
+                Thread.ofPlatform().name("logs-scheduler-", 1).factory());
+        // Shutdown drops the pending partition maintenance instead of waiting for the next day
+        executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        scheduler = executor;
+        for (int i = 0; i < flushWorkers; i++)
+            scheduler.schedule(this::runFlushWorker, FLUSH_START_DELAY, TimeUnit.SECONDS);
+        scheduler.scheduleWithFixedDelay(this::flushLocalLogs, FLUSH_START_DELAY, LOCAL_FLUSH_INTERVAL,
+                TimeUnit.SECONDS);
+
+        // Create upcoming table partitions & apply retention every start of day
+        schedulePartitionMaintenance();
 
         // Get and set count of fallback logs in the local SQLite database
         try {
@@ -66,11 +203,69 @@ public class LogsManager {
             System.err.println("Cannot fetch current fallback rows in local SQLite DB.");
             fallbackLogsCount = new AtomicInteger();  // safe default
         }
+
+        registerGauges();
+
+        // Requeue whatever wasn't committed before the last shutdown
+        if (wal != null) {
+            try {
+                List<LogDTO> recoveredLogs = wal.recover();
+                if (!recoveredLogs.isEmpty()) {
+                    queue.offerRemainder(recoveredLogs);
+                    addToRecentLogs(recoveredLogs);
+                    System.out.println("Recovered " + recoveredLogs.size() + " uncommitted logs from WAL.");
+                }
+            } catch (IOException e) {
+                log.error("WAL recovery failed: {}", e.getMessage());
+            }
+        }
+    }
+
+    private void registerGauges() {
+        Metrics.gauge("auditlogger_queue_depth", "Logs waiting in the ingest queue.", queue::size);
+        Metrics.gauge("auditlogger_queue_capacity", "Capacity of the ingest queue.", queue::capacity);
+        Metrics.gauge("auditlogger_flush_target_batch_size", "Batch size the flush workers currently drain up to.",
+                batchController::batchSize);
+        Metrics.gauge("auditlogger_flush_linger_seconds", "Longest a flush worker currently waits for a batch to fill.",
+                () -> batchController.lingerNanos() / (double) TimeUnit.SECONDS.toNanos(1));
+        Metrics.gauge("auditlogger_flush_in_flight_batches", "Batches being flushed into the main DB.",
+                inFlightBatches::get);
+        Metrics.gauge("auditlogger_fallback_logs", "Logs in the local fallback DB waiting to be replayed.",
+                fallbackLogsCount::get);
+        Metrics.gauge("auditlogger_replay_last_success_timestamp_seconds",
+                "Unix time of the last replay of the local fallback DB that completed, 0 if none yet.",
+                () -> lastReplayEpochSeconds);
+        if (recentLogs != null)
+            Metrics.gauge("auditlogger_hot_tier_logs", "Logs held in the hot tier.", recentLogs::size);
+        if (queryCache != null)
+            Metrics.gauge("auditlogger_query_cache_entries", "Results held in the query cache.", queryCache::size);
     }
 
+    private static WriteAheadLog openWriteAheadLog(@NotNull Config config) {
+        if (!Boolean.parseBoolean(config.getString("wal.enabled", "false")))
+            return null;
+
+        Path directory = Path.of(config.getString("wal.directory", "wal"));
+        int segmentSize = config.getInt("wal.segmentSizeMb", DEFAULT_WAL_SEGMENT_SIZE_MB) * 1024 * 1024;
+        boolean forceOnAppend = Boolean.parseBoolean(config.getString("wal.forceOnAppend", "false"));
+        int maxFreeSegments = config.getInt("wal.maxFreeSegments", DEFAULT_WAL_FREE_SEGMENTS);
+        try {
+            WriteAheadLog wal = new WriteAheadLog(directory, segmentSize, forceOnAppend, maxFreeSegments);
+            System.out.println("WAL enabled in directory: " + directory.toAbsolutePath());
+            return wal;
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot open WAL directory: " + directory, e);
+        }
+    }
+
+    /**
+     * Stop the flush workers once their current batch is committed, then flush whatever is still queued
+     * and close the WAL. Nothing must be added anymore, so call it after ingest has stopped.
+     */
     public void shutdownBatcher() {
         if (!scheduler.isShutdown()) {
             System.out.println("Attempting to shutdown batcher..");
+            stopping = true;
             scheduler.shutdown();
             try {
                 if (!scheduler.awaitTermination(SHUTDOWN_TIMEOUT, TimeUnit.SECONDS)) {
@@ -81,78 +276,297 @@ public class LogsManager {
                 scheduler.shutdownNow();
                 Thread.currentThread().interrupt();
             }
+            flushRemainingLogs();
+        }
+        if (wal != null) {
+            try {
+                wal.close();
+            } catch (IOException e) {
+                log.error("Failed to close WAL: {}", e.getMessage());
+            }
         }
         if (scheduler.isShutdown())
             System.out.println("Shutdown successful!");
     }
 
-    public void addLog(LogDTO log) {
-        queue.add(log);
+    /**
+     * @return True if the log was accepted, false if the ingest queue is full and the request should be retried later.
+     */
+    public boolean addLog(LogDTO log) {
+        return addLogs(List.of(log));
+    }
+
+    /**
+     * @return True if the logs were accepted, false if the ingest queue is full and the request should be retried later.
+     */
+    public boolean addLogs(List<LogDTO> logs) {
+        if (!appendToWal(logs))
+            return false;
+        boolean accepted = queue.offer(logs);
+        if (accepted) {
+            acceptedLogs.add(logs.size());
+            addToRecentLogs(logs);
+        } else {
+            rejectedLogs.add(logs.size());
+            if (wal != null)
+                wal.release(logs);
+        }
+        return accepted;
+    }
+
+    /**
+     * Add logs that belong to a request whose earlier logs were already accepted.
+     * These are never refused for a full queue, so a partially accepted request is not left half-applied.
+     *
+     * @return False if the logs could not be written to the WAL, in which case none of them were accepted.
+     */
+    public boolean addRemainingLogs(List<LogDTO> logs) {
+        if (!appendToWal(logs))
+            return false;
+        queue.offerRemainder(logs);
+        acceptedLogs.add(logs.size());
+        addToRecentLogs(logs);
+        return true;
+    }
+
+    private void addToRecentLogs(List<LogDTO> logs) {
+        if (recentLogs != null)
+            recentLogs.add(logs);
     }
 
-    public void addLogs(List<LogDTO> logs) {
-        queue.addAll(logs);
+    /**
+     * @return False if the logs could not be written to the WAL. None of them are left pending in it then.
+     */
+    private boolean appendToWal(List<LogDTO> logs) {
+        if (wal == null)
+            return true;
+        try {
+            wal.append(logs);
+            return true;
+        } catch (IOException e) {
+            log.error("Failed to append {} logs to WAL: {}", logs.size(), e.getMessage());
+            return false;
+        }
+    }
+
+    public int getQueueSize() {
+        return queue.size();
     }
 
-    private void scheduleMonthlyPartition() {
+    public int getQueueCapacity() {
+        return queue.capacity();
+    }
+
+    private void schedulePartitionMaintenance() {
         ZonedDateTime now = ZonedDateTime.now();
-        ZonedDateTime nextFirst = now.withDayOfMonth(1).plusMonths(1)
-                .truncatedTo(java.time.temporal.ChronoUnit.DAYS);
+        ZonedDateTime nextDay = now.plusDays(1).truncatedTo(ChronoUnit.DAYS);
 
-        long delay = Duration.between(now, nextFirst).toMillis();
+        long delay = Duration.between(now, nextDay).toMillis();
         scheduler.schedule(() -> {
             try {
-                dao.createMonthlyPartition();
+                dao.maintainPartitions();
             } catch (SQLException e) {
                 System.err.println(e.getMessage());
                 log.error(e.getMessage());
             } finally {
-                scheduleMonthlyPartition();
+                schedulePartitionMaintenance();
             }
-        }, delay, TimeUnit.SECONDS);
+        }, delay, TimeUnit.MILLISECONDS);
+
+        System.out.println("Next partition maintenance scheduled for " + nextDay);
+    }
 
-        System.out.println("Next monthly partition creation scheduled for " + nextFirst);
+    /**
+     * Flush batch after batch until the batcher stops. Waiting for the first log & lingering already bound
+     * how long a worker waits, so the next batch starts as soon as the previous one is committed
+     * and only the batch controller decides how long logs wait.
+     */
+    private void runFlushWorker() {
+        while (!stopping && !Thread.currentThread().isInterrupted()) {
+            try {
+                flushLogs();
+            } catch (RuntimeException e) {
+                log.error("[{}] Flush failed: {}", Thread.currentThread().getName(), e.getMessage());
+            }
+        }
     }
 
     private void flushLogs() {
-//        vt.submit(() -> {
         List<LogDTO> batch = new ArrayList<>();
+        // Counted before taking from the queue, so no log is ever neither queued nor in flight
+        // while another worker advances the flush watermark
+        inFlightBatches.incrementAndGet();
+        boolean inFlight = true;
         try {
-            // Block until at least 1 row arrives
-            LogDTO firstLog = queue.take();
+            // Wait for at least 1 row, waking up now and then to notice the batcher stopping
+            LogDTO firstLog = queue.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+            if (firstLog == null)
+                return;
+            Instant drainStartedAt = Instant.now();
             batch.add(firstLog);
 
             // Instantly grab whatever else is available
+            int batchSize = batchController.batchSize();
             queue.drainTo(batch, batchSize - 1);
 
-            // Try to grab more if batch is underfilled
-            while (batch.size() < batchSize) {
-                LogDTO next = queue.poll(3, TimeUnit.SECONDS);
-                if (next == null) break; // Timeout reached
+            // Linger for more if batch is underfilled, bounded from the arrival of the first log
+            long lingerDeadline = System.nanoTime() + batchController.lingerNanos();
+            while (batch.size() < batchSize && !stopping) {
+                long remaining = lingerDeadline - System.nanoTime();
+                if (remaining <= 0)
+                    break;
+                LogDTO next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                if (next == null) break; // Linger time reached
                 batch.add(next);
+                queue.drainTo(batch, batchSize - batch.size());
             }
 
-            int flushedLogs = dao.insertToPostgres(batch);
-            System.out.println("Successfully flushed " + flushedLogs + " logs into main DB!");
-            System.out.println("Current logs in queue: " + queue.size());
+            inFlight = false;
+            flushBatch(batch, drainStartedAt);
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
-            e.printStackTrace();
+            // Hand the drained logs back, the shutdown flushes what's left in the queue
+            if (!batch.isEmpty())
+                queue.offerRemainder(batch);
+        } finally {
+            if (inFlight)
+                inFlightBatches.decrementAndGet();
+        }
+    }
+
+    /**
+     * Commit a drained batch into the main DB, or into the local fallback DB if that fails.<br>
+     * The batch must be counted in {@code inFlightBatches}, and no longer is once this returns.
+     */
+    private void flushBatch(@NotNull List<LogDTO> batch, @NotNull Instant drainStartedAt) {
+        boolean inFlight = true;
+        try {
+            batchSizes.observe(batch.size());
+            long flushStartedAt = System.nanoTime();
+            int flushedLogs = dao.insertToPostgres(batch);
+            long flushNanos = System.nanoTime() - flushStartedAt;
+            flushLatency.observeNanos(flushNanos);
+            batchController.onFlushed(batch.size(), flushNanos, queue.size());
+            this.flushedLogs.add(flushedLogs);
+            inFlightBatches.decrementAndGet();
+            inFlight = false;
+            if (wal != null)
+                wal.release(batch);
+            notifyCommitted(batch);
+            advanceFlushWatermark(batch, drainStartedAt);
+            System.out.println("[" + Thread.currentThread().getName() + "] Successfully flushed "
+                    + flushedLogs + " logs into main DB!");
+            System.out.println("Current logs in queue: " + queue.size());
         } catch (SQLException e) {
-            System.err.println("Flush to main DB failed! Attempting to insert into local fallback DB..");
+            flushFailures.increment();
+            System.err.println("[" + Thread.currentThread().getName() + "] Flush to main DB failed! "
+                    + "Attempting to insert into local fallback DB..");
             insertIntoLocal(batch);
+        } finally {
+            if (inFlight)
+                inFlightBatches.decrementAndGet();
+        }
+    }
+
+    /**
+     * Flush what's left in the queue on the calling thread, once the flush workers have stopped.
+     */
+    private void flushRemainingLogs() {
+        int remainingLogs = queue.size();
+        if (remainingLogs > 0)
+            System.out.println("Flushing " + remainingLogs + " logs left in queue..");
+        while (true) {
+            List<LogDTO> batch = new ArrayList<>();
+            inFlightBatches.incrementAndGet();
+            queue.drainTo(batch, batchController.batchSize());
+            if (batch.isEmpty()) {
+                inFlightBatches.decrementAndGet();
+                return;
+            }
+            flushBatch(batch, Instant.now());
+        }
+    }
+
+    /**
+     * Everything accepted before a batch started draining is committed once that batch is,
+     * provided no other batch is still in flight and nothing is left waiting in the queue.<br>
+     * The watermark is server time while windows are in log time, so a log that arrives after its window's grace
+     * period (an offline client, a resent WebSocket frame) may land in a window already cached as closed.
+     */
+    private void advanceFlushWatermark(@NotNull List<LogDTO> batch, @NotNull Instant drainStartedAt) {
+        if (queryCache != null) {
+            if (hasLateLogs(batch))
+                queryCache.invalidateAll();
+            else
+                queryCache.invalidateOpenWindows();
+        }
+        if (inFlightBatches.get() == 0 && queue.size() == 0) {
+            synchronized (this) {
+                if (drainStartedAt.isAfter(flushWatermark))
+                    flushWatermark = drainStartedAt;
+            }
         }
-//        });
+    }
+
+    /**
+     * @return True if a log of the batch is old enough to fall in a window that may be cached as closed.
+     */
+    private boolean hasLateLogs(@NotNull List<LogDTO> batch) {
+        Instant closedBefore = flushWatermark.minus(closedWindowGrace);
+        for (LogDTO log : batch) {
+            if (log.getTimestamp() == null || !log.getTimestamp().isAfter(closedBefore))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * A window is closed once all logs accepted up to its end (plus a grace period for late logs)
+     * are in the main DB, and nothing is waiting in the local fallback DB to be replayed.
+     */
+    private boolean isClosedWindow(@NotNull Instant until) {
+        return fallbackLogsCount.intValue() == 0
+                && until.plus(closedWindowGrace).isBefore(flushWatermark);
     }
 
     private void insertIntoLocal(@NotNull List<LogDTO> batch) {
         try {
             int insertedFallbackLogs = dao.insertToSQLite(batch);
+            if (wal != null)
+                wal.release(batch);
+            notifyCommitted(batch);
+            fallbackInsertedLogs.add(insertedFallbackLogs);
             System.out.println("Inserted " + insertedFallbackLogs + " logs into local DB.");
             fallbackLogsCount.addAndGet(insertedFallbackLogs);
             System.out.println("Total fallback: " + fallbackLogsCount.intValue() + " logs.");
         } catch (SQLException e) {
             e.printStackTrace();
+            System.err.println("Insert of " + batch.size() + " logs into local fallback DB failed!");
+            notifyFailed(batch);
+        }
+    }
+
+    /**
+     * Tell whoever waits for the logs of a batch that they're committed. The listener is dropped afterwards,
+     * so a log kept in the hot tier doesn't keep its ingest channel around.
+     */
+    private static void notifyCommitted(@NotNull List<LogDTO> batch) {
+        for (LogDTO log : batch) {
+            LogDTO.CommitListener listener = log.getCommitListener();
+            if (listener == null)
+                continue;
+            log.setCommitListener(null);
+            listener.onCommitted();
+        }
+    }
+
+    private static void notifyFailed(@NotNull List<LogDTO> batch) {
+        for (LogDTO log : batch) {
+            LogDTO.CommitListener listener = log.getCommitListener();
+            if (listener == null)
+                continue;
+            log.setCommitListener(null);
+            listener.onFailed();
         }
     }
 
@@ -163,30 +577,147 @@ public class LogsManager {
         }
 
         try {
-            dao.flushLocalToMainDB();
+            int replayedLogs = dao.flushLocalToMainDB();
+            this.replayedLogs.add(replayedLogs);
+            // Replayed logs may be of any age
+            if (replayedLogs > 0 && queryCache != null)
+                queryCache.invalidateAll();
+            System.out.println("Replayed " + replayedLogs + " logs from local DB into main DB.");
             int currentFallbackLogs = dao.getLocalDBLogsCount();
             fallbackLogsCount.set(currentFallbackLogs);
+            lastReplayEpochSeconds = Instant.now().getEpochSecond();
         } catch (SQLException e) {
+            replayFailures.increment();
             e.printStackTrace();
         }
     }
 
-    public List<LogDTO> getLogsOnCurrentLoc(String world, double radius, double x, double z,
-                                            Instant since, Instant until, int limit) {
+    /**
+     * @return True if part of the window is served from the hot tier, which can't be streamed from the main DB.
+     */
+    public boolean coversRecentLogs(@NotNull Instant until) {
+        return recentLogs != null && !until.isBefore(recentLogs.coverageStart());
+    }
+
+    public List<LogDTO> getLogsOnCurrentLoc(String world, double radius, double x, double z, boolean circular,
+                                            Instant since, Instant until, int limit, LogCursor after) {
+        if (!coversRecentLogs(until))
+            return cachedLogsOnCurrentLoc(world, radius, x, z, circular, since, until, limit, after);
+
+        Instant coverageStart = recentLogs.coverageStart();
+        List<LogDTO> recent = recentLogs.logsInArea(world, radius, x, z, circular, since, until, limit, after);
+        return mergeOlderLogs(recent, since, coverageStart, limit, (olderUntil, remaining) ->
+                cachedLogsOnCurrentLoc(world, radius, x, z, circular, since, olderUntil, remaining, after));
+    }
+
+    private List<LogDTO> cachedLogsOnCurrentLoc(String world, double radius, double x, double z, boolean circular,
+                                                Instant since, Instant until, int limit, LogCursor after) {
+        LogCursor mainDbAfter = RecentLogsBuffer.mainDbCursor(after);
+        if (queryCache != null) {
+            QueryKey key = new AreaQueryKey(world, radius, x, z, circular, since, until, limit, mainDbAfter);
+            return queryCache.get(key, isClosedWindow(until), () ->
+                    queryLogsOnCurrentLoc(world, radius, x, z, circular, since, until, limit, mainDbAfter));
+        }
+        return queryLogsOnCurrentLoc(world, radius, x, z, circular, since, until, limit, mainDbAfter);
+    }
+
+    private List<LogDTO> queryLogsOnCurrentLoc(String world, double radius, double x, double z, boolean circular,
+                                               Instant since, Instant until, int limit, LogCursor after) {
+        try {
+            return dao.getLogsOnCurrentLoc(world, radius, x, z, circular, since, until, limit, after);
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    public List<LogDTO> getLogsOfPlayer(UUID playerUuid, Instant since, Instant until, int limit,
+                                        LogCursor after) {
+        if (!coversRecentLogs(until))
+            return cachedLogsOfPlayer(playerUuid, since, until, limit, after);
+
+        Instant coverageStart = recentLogs.coverageStart();
+        List<LogDTO> recent = recentLogs.logsOfPlayer(playerUuid, since, until, limit, after);
+        return mergeOlderLogs(recent, since, coverageStart, limit, (olderUntil, remaining) ->
+                cachedLogsOfPlayer(playerUuid, since, olderUntil, remaining, after));
+    }
+
+    private List<LogDTO> cachedLogsOfPlayer(UUID playerUuid, Instant since, Instant until, int limit,
+                                            LogCursor after) {
+        LogCursor mainDbAfter = RecentLogsBuffer.mainDbCursor(after);
+        if (queryCache != null) {
+            QueryKey key = new PlayerQueryKey(playerUuid, since, until, limit, mainDbAfter);
+            return queryCache.get(key, isClosedWindow(until), () ->
+                    queryLogsOfPlayer(playerUuid, since, until, limit, mainDbAfter));
+        }
+        return queryLogsOfPlayer(playerUuid, since, until, limit, mainDbAfter);
+    }
+
+    /**
+     * Fill up a page of hot tier logs with main DB logs older than the hot tier coverage.<br>
+     * Every hot tier log is newer than those, so the older ones simply go after them.
+     *
+     * @param olderQuery Query of the main DB up to the given (inclusive) end, with the given limit.
+     */
+    private List<LogDTO> mergeOlderLogs(@NotNull List<LogDTO> recent, @NotNull Instant since,
+                                        @NotNull Instant coverageStart, int limit,
+                                        @NotNull BiFunction<Instant, Integer, List<LogDTO>> olderQuery) {
+        if (recent.size() >= limit || !since.isBefore(coverageStart))
+            return recent.isEmpty() ? null : recent;
+
+        List<LogDTO> older = olderQuery.apply(coverageStart.minus(1, ChronoUnit.MICROS), limit - recent.size());
+        if (older == null)
+            return recent.isEmpty() ? null : recent;
+        if (recent.isEmpty())
+            return older;
+
+        List<LogDTO> merged = new ArrayList<>(recent.size() + older.size());
+        merged.addAll(recent);
+        merged.addAll(older);
+        return merged;
+    }
+
+    private List<LogDTO> queryLogsOfPlayer(UUID playerUuid, Instant since, Instant until, int limit,
+                                           LogCursor after) {
         try {
-            return dao.getLogsOnCurrentLoc(world, radius, x, z, since, until, limit);
+            return dao.getLogsOfPlayer(playerUuid, since, until, limit, after);
         } catch (SQLException e) {
             e.printStackTrace();
             return null;
         }
     }
 
-    public List<LogDTO> getLogsOfPlayer(UUID playerUuid, Instant since, Instant until, int limit) {
+    public boolean hasStats() {
+        return dao.hasRollups();
+    }
+
+    /**
+     * @return Aggregated log counts, or null if the rollups can't be queried.
+     */
+    public List<Map<String, Object>> getStats(StatsQuery query) {
         try {
-            return dao.getLogsOfPlayer(playerUuid, since, until, limit);
+            return dao.getStats(query);
         } catch (SQLException e) {
             e.printStackTrace();
             return null;
         }
     }
-}
+
+    /**
+     * @return False if there are no matching logs, in which case the target is never opened.
+     */
+    public boolean streamLogsOnCurrentLoc(String world, double radius, double x, double z, boolean circular,
+                                          Instant since, Instant until, int limit, LogCursor after,
+                                          ResultStreamTarget target) throws SQLException, IOException {
+        return dao.streamLogsOnCurrentLoc(world, radius, x, z, circular, since, until, limit,
+                RecentLogsBuffer.mainDbCursor(after), target);
+    }
+
+    /**
+     * @return False if there are no matching logs, in which case the target is never opened.
+     */
+    public boolean streamLogsOfPlayer(UUID playerUuid, Instant since, Instant until, int limit,
+                                      LogCursor after, ResultStreamTarget target) throws SQLException, IOException {
+        return dao.streamLogsOfPlayer(playerUuid, since, until, limit, RecentLogsBuffer.mainDbCursor(after), target);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,126 @@
+package io.ryhunwashere.auditlogger.process;
+
+import io.ryhunwashere.auditlogger.dto.LogDTO;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Bounded LRU cache of query results with TTL eviction and single-flight loading.<br>
+ * Results of closed windows (fully flushed when cached) stay valid until they expire.
+ * Results of open windows are also dropped as soon as another batch is flushed,
+ * which is tracked by the flush generation passed to {@link #invalidateOpenWindows()}.
+ * Late logs committed into windows that may already be closed drop every result through {@link #invalidateAll()}.
+ *
+ * @param <K> Query key, must implement {@code equals} & {@code hashCode}.
+ */
+public class QueryCache<K> {
+    private record Entry(List<LogDTO> value, long expiresAtNanos, boolean closedWindow, long generation,
+                         long lateGeneration) {
+    }
+
+    private final int maxEntries;
+    private final long ttlNanos;
+    private final AtomicLong flushGeneration = new AtomicLong();
+    private final AtomicLong lateGeneration = new AtomicLong();
+    private final Map<K, CompletableFuture<List<LogDTO>>> inFlight = new ConcurrentHashMap<>();
+    private final Map<K, Entry> entries;
+
+    public QueryCache(int maxEntries, long ttlNanos) {
+        this.maxEntries = maxEntries;
+        this.ttlNanos = ttlNanos;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Entry> eldest) {
+                return size() > QueryCache.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Get a cached result or load it. Concurrent calls with the same key share one load.
+     * Null results are never cached, since the loader can't tell "no rows" from a failed query.
+     *
+     * @param closedWindow True if every log of the queried window was already flushed.
+     */
+    public List<LogDTO> get(@NotNull K key, boolean closedWindow, @NotNull Supplier<List<LogDTO>> loader) {
+        long generation = flushGeneration.get();
+        long lateGeneration = this.lateGeneration.get();
+        List<LogDTO> cached = getValid(key);
+        if (cached != null)
+            return cached;
+
+        CompletableFuture<List<LogDTO>> load = new CompletableFuture<>();
+        CompletableFuture<List<LogDTO>> existingLoad = inFlight.putIfAbsent(key, load);
+        if (existingLoad != null) {
+            try {
+                return existingLoad.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException cause ? cause : e;
+            }
+        }
+
+        try {
+            List<LogDTO> result = loader.get();
+            if (result != null) {
+                Entry entry = new Entry(result, System.nanoTime() + ttlNanos, closedWindow, generation,
+                        lateGeneration);
+                synchronized (entries) {
+                    entries.put(key, entry);
+                }
+            }
+            load.complete(result);
+            return result;
+        } catch (RuntimeException e) {
+            load.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, load);
+        }
+    }
+
+    private List<LogDTO> getValid(@NotNull K key) {
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry == null)
+                return null;
+            boolean expired = System.nanoTime() - entry.expiresAtNanos() >= 0;
+            boolean stale = (!entry.closedWindow() && entry.generation() != flushGeneration.get())
+                    || entry.lateGeneration() != lateGeneration.get();
+            if (expired || stale) {
+                entries.remove(key);
+                return null;
+            }
+            return entry.value();
+        }
+    }
+
+    /**
+     * Called after every committed flush: results of windows that were still open become stale.
+     */
+    public void invalidateOpenWindows() {
+        flushGeneration.incrementAndGet();
+    }
+
+    /**
+     * Called after logs were committed into windows that may already be cached as closed:
+     * every result becomes stale, including those still being loaded.
+     */
+    public void invalidateAll() {
+        lateGeneration.incrementAndGet();
+        flushGeneration.incrementAndGet();
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+}
@@ -0,0 +1,254 @@
+package io.ryhunwashere.auditlogger.process;
+
+import io.ryhunwashere.auditlogger.dto.LogCursor;
+import io.ryhunwashere.auditlogger.dto.LogDTO;
+import io.ryhunwashere.auditlogger.util.ChunkUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Ring buffer of the most recently accepted logs, indexed by world chunk and by player UUID.<br>
+ * Logs are added as soon as they are accepted, so queries see them before they are flushed.
+ * The buffer keeps a coverage start: every accepted log with a timestamp at or after it is still
+ * in the buffer. Windows starting at or after the coverage start can be answered from memory alone.
+ */
+public class RecentLogsBuffer {
+    private record ChunkKey(String world, int chunkX, int chunkZ) {
+    }
+
+    /**
+     * An accepted log with the synthetic id it's paged by.
+     */
+    private record BufferedLog(LogDTO log, long rowId) {
+    }
+
+    // Synthetic ids of memory logs start above any id the main DB hands out, so at the same timestamp
+    // memory logs sort before main DB logs, and among themselves the latest accepted first
+    static final long FIRST_MEMORY_ROW_ID = 1L << 62;
+
+    private final BufferedLog[] ring;
+    private final long[] acceptedAtMillis;
+    private final long retentionMillis;
+    private int head;   // index of the oldest log
+    private int size;
+
+    private final Map<ChunkKey, ArrayDeque<BufferedLog>> byChunk = new HashMap<>();
+    private final Map<UUID, ArrayDeque<BufferedLog>> byPlayer = new HashMap<>();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private volatile Instant coverageStart;
+    private long nextRowId = FIRST_MEMORY_ROW_ID;   // Guarded by the write lock
+
+    public RecentLogsBuffer(int capacity, long retentionMillis) {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("Recent logs capacity must be positive, got: " + capacity);
+        this.ring = new BufferedLog[capacity];
+        this.acceptedAtMillis = new long[capacity];
+        this.retentionMillis = retentionMillis;
+        this.coverageStart = Instant.now().truncatedTo(ChronoUnit.MICROS);
+    }
+
+    public void add(@NotNull List<LogDTO> logs) {
+        long now = System.currentTimeMillis();
+        lock.writeLock().lock();
+        try {
+            while (size > 0 && now - acceptedAtMillis[head] > retentionMillis)
+                evictOldest();
+
+            for (LogDTO log : logs) {
+                if (log.getTimestamp() == null || log.getWorld() == null || log.getPlayerUUID() == null)
+                    continue;
+                if (size == ring.length)
+                    evictOldest();
+
+                BufferedLog buffered = new BufferedLog(log, nextRowId++);
+                int tail = (head + size) % ring.length;
+                ring[tail] = buffered;
+                acceptedAtMillis[tail] = now;
+                size++;
+                ChunkKey chunkKey = new ChunkKey(log.getWorld(),
+                        ChunkUtil.toChunk(log.getX()), ChunkUtil.toChunk(log.getZ()));
+                byChunk.computeIfAbsent(chunkKey, key -> new ArrayDeque<>()).addLast(buffered);
+                byPlayer.computeIfAbsent(log.getPlayerUUID(), key -> new ArrayDeque<>()).addLast(buffered);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void evictOldest() {
+        BufferedLog buffered = ring[head];
+        LogDTO oldest = buffered.log();
+        ring[head] = null;
+        head = (head + 1) % ring.length;
+        size--;
+
+        // Indexes are filled in ring order, so the oldest log is always first in its deques
+        ChunkKey chunkKey = new ChunkKey(oldest.getWorld(),
+                ChunkUtil.toChunk(oldest.getX()), ChunkUtil.toChunk(oldest.getZ()));
+        removeFirst(byChunk, chunkKey, buffered);
+        removeFirst(byPlayer, oldest.getPlayerUUID(), buffered);
+
+        // Main DB row timestamps have microsecond precision
+        Instant evictedUpTo = oldest.getTimestamp().truncatedTo(ChronoUnit.MICROS).plus(1, ChronoUnit.MICROS);
+        if (evictedUpTo.isAfter(coverageStart))
+            coverageStart = evictedUpTo;
+    }
+
+    private static <K> void removeFirst(@NotNull Map<K, ArrayDeque<BufferedLog>> index, K key, BufferedLog log) {
+        ArrayDeque<BufferedLog> deque = index.get(key);
+        if (deque == null)
+            return;
+        if (deque.peekFirst() == log)
+            deque.pollFirst();
+        else
+            deque.remove(log);
+        if (deque.isEmpty())
+            index.remove(key);
+    }
+
+    /**
+     * The same log is paged by its synthetic id here and by its real id in the main DB,
+     * so the main DB can't tell which logs at the timestamp of a memory log's cursor were already served.
+     * It continues strictly before that timestamp instead: the logs at that timestamp are still in memory
+     * unless the coverage start moved past them, and no log is ever served twice.
+     *
+     * @return The keyset cursor to query the main DB after, for a cursor handed out by either tier.
+     */
+    static @Nullable LogCursor mainDbCursor(@Nullable LogCursor after) {
+        if (after == null || after.id() < FIRST_MEMORY_ROW_ID)
+            return after;
+        // Main DB ids are positive, so (ts, id) < (cursor ts, 0) is ts < cursor ts
+        return new LogCursor(after.ts(), 0L);
+    }
+
+    /**
+     * @return Earliest timestamp from which this buffer holds every accepted log.
+     */
+    public Instant coverageStart() {
+        return coverageStart;
+    }
+
+    public List<LogDTO> logsOfPlayer(@NotNull UUID playerUuid, @NotNull Instant since, @NotNull Instant until,
+                                     int limit, @Nullable LogCursor after) {
+        List<BufferedLog> matches = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            ArrayDeque<BufferedLog> logs = byPlayer.get(playerUuid);
+            if (logs != null) {
+                for (BufferedLog log : logs) {
+                    if (inWindow(log, since, until, after))
+                        matches.add(log);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return toPage(matches, limit);
+    }
+
+    public List<LogDTO> logsInArea(@NotNull String world, double radius, double x, double z, boolean circular,
+                                   @NotNull Instant since, @NotNull Instant until, int limit,
+                                   @Nullable LogCursor after) {
+        int minChunkX = ChunkUtil.toChunk(x - radius);
+        int maxChunkX = ChunkUtil.toChunk(x + radius);
+        int minChunkZ = ChunkUtil.toChunk(z - radius);
+        int maxChunkZ = ChunkUtil.toChunk(z + radius);
+        long touchedChunks = ((long) maxChunkX - minChunkX + 1) * ((long) maxChunkZ - minChunkZ + 1);
+
+        List<BufferedLog> matches = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            if (touchedChunks <= byChunk.size()) {
+                for (int chunkX = minChunkX; chunkX <= maxChunkX; chunkX++) {
+                    for (int chunkZ = minChunkZ; chunkZ <= maxChunkZ; chunkZ++) {
+                        ArrayDeque<BufferedLog> logs = byChunk.get(new ChunkKey(world, chunkX, chunkZ));
+                        if (logs != null)
+                            collectInArea(logs, radius, x, z, circular, since, until, after, matches);
+                    }
+                }
+            } else {
+                // Fewer occupied chunks than touched ones, so walking the occupied ones is cheaper
+                for (Map.Entry<ChunkKey, ArrayDeque<BufferedLog>> entry : byChunk.entrySet()) {
+                    ChunkKey key = entry.getKey();
+                    if (key.world().equals(world)
+                            && key.chunkX() >= minChunkX && key.chunkX() <= maxChunkX
+                            && key.chunkZ() >= minChunkZ && key.chunkZ() <= maxChunkZ)
+                        collectInArea(entry.getValue(), radius, x, z, circular, since, until, after, matches);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return toPage(matches, limit);
+    }
+
+    private void collectInArea(@NotNull ArrayDeque<BufferedLog> logs, double radius, double x, double z,
+                               boolean circular, @NotNull Instant since, @NotNull Instant until,
+                               @Nullable LogCursor after, @NotNull List<BufferedLog> matches) {
+        for (BufferedLog log : logs) {
+            double dx = log.log().getX() - x;
+            double dz = log.log().getZ() - z;
+            boolean inArea = circular
+                    ? dx * dx + dz * dz <= radius * radius
+                    : Math.abs(dx) <= radius && Math.abs(dz) <= radius;
+            if (inArea && inWindow(log, since, until, after))
+                matches.add(log);
+        }
+    }
+
+    private boolean inWindow(@NotNull BufferedLog log, @NotNull Instant since, @NotNull Instant until,
+                             @Nullable LogCursor after) {
+        Instant ts = log.log().getTimestamp();
+        if (ts.isBefore(since) || ts.isAfter(until) || ts.isBefore(coverageStart))
+            return false;
+        // Same as (ts, id) < (cursor ts, cursor id) in the main DB query
+        if (after == null)
+            return true;
+        int byTimestamp = ts.compareTo(after.ts());
+        return byTimestamp < 0 || (byTimestamp == 0 && log.rowId() < after.id());
+    }
+
+    /**
+     * Sort newest first, cut to the limit and copy into the same shape as logs read from the main DB.
+     */
+    private static @NotNull List<LogDTO> toPage(@NotNull List<BufferedLog> matches, int limit) {
+        matches.sort(Comparator.comparing((BufferedLog buffered) -> buffered.log().getTimestamp())
+                .thenComparingLong(BufferedLog::rowId)
+                .reversed());
+        List<LogDTO> page = new ArrayList<>(Math.min(matches.size(), limit));
+        for (BufferedLog buffered : matches) {
+            if (page.size() >= limit)
+                break;
+            LogDTO log = buffered.log();
+            LogDTO result = new LogDTO();
+            result.setRowId(buffered.rowId());
+            result.setTimestamp(log.getTimestamp());
+            result.setPlayerName(log.getPlayerName());
+            result.setActionType(log.getActionType());
+            if (log.getActionDetailJson() != null)
+                result.setActionDetailJson(log.getActionDetailJson());
+            else
+                result.setActionDetail(log.getActionDetail());
+            result.setWorld(log.getWorld());
+            result.setX(log.getX());
+            result.setY(log.getY());
+            result.setZ(log.getZ());
+            page.add(result);
+        }
+        return page;
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package io.ryhunwashere.auditlogger.util;
+
+public class ChunkUtil {
+    // Minecraft chunks are 16x16 blocks on the X/Z plane
+    public static final int CHUNK_SIZE = 16;
+
+    /**
+     * Get the chunk coordinate containing a block coordinate, matching Minecraft's floor division.
+     *
+     * @param blockCoordinate X or Z coordinate in blocks.
+     * @return Chunk X or Z coordinate.
+     */
+    public static int toChunk(double blockCoordinate) {
+        return (int) Math.floor(blockCoordinate / CHUNK_SIZE);
+    }
+}
@@ -0,0 +1,33 @@
+package io.ryhunwashere.auditlogger.util;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Bounded pool of canonical string instances for values that repeat across many logs,
+ * such as world & player names, so queued logs share one instance instead of holding their own copy.
+ */
+public class StringInterner {
+    private final Map<String, String> pool = new ConcurrentHashMap<>();
+    private final int maxSize;
+
+    public StringInterner(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * @return The pooled instance equal to {@code str}, or {@code str} itself if it isn't pooled
+     * and the pool is already full.
+     */
+    public String intern(String str) {
+        if (str == null)
+            return null;
+        String pooled = pool.get(str);
+        if (pooled != null)
+            return pooled;
+        if (pool.size() >= maxSize)
+            return str;
+        pooled = pool.putIfAbsent(str, str);
+        return pooled != null ? pooled : str;
+    }
+}
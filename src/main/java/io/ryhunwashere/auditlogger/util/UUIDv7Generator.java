@@ -0,0 +1,36 @@
+package io.ryhunwashere.auditlogger.util;
+
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class UUIDv7Generator {
+    // Unix millis in the upper bits & a 12-bit sequence (rand_a) in the lower 12 bits of the last UUID
+    private static final AtomicLong lastTimeAndSequence = new AtomicLong();
+
+    /**
+     * Generate a time-ordered UUID version 7 (RFC 9562) without locking.<br>
+     * UUIDs from the same JVM are strictly increasing: within the same millisecond the 12-bit sequence
+     * counts up, and if it runs out the timestamp is advanced by a millisecond instead of going back.
+     * The remaining 62 bits are random, from {@link ThreadLocalRandom} so threads don't contend on
+     * a shared {@link java.security.SecureRandom}.
+     *
+     * @return New UUIDv7.
+     */
+    public static UUID next() {
+        long timeAndSequence;
+        while (true) {
+            long last = lastTimeAndSequence.get();
+            long now = System.currentTimeMillis() << 12;
+            timeAndSequence = now > last ? now : last + 1;
+            if (lastTimeAndSequence.compareAndSet(last, timeAndSequence))
+                break;
+        }
+
+        long millis = timeAndSequence >>> 12;
+        long sequence = timeAndSequence & 0xFFFL;
+        long mostSigBits = (millis << 16) | 0x7000L | sequence;
+        long leastSigBits = (ThreadLocalRandom.current().nextLong() & 0x3FFF_FFFF_FFFF_FFFFL) | Long.MIN_VALUE;
+        return new UUID(mostSigBits, leastSigBits);
+    }
+}
@@ -0,0 +1,101 @@
+package io.ryhunwashere.auditlogger.wal;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import io.ryhunwashere.auditlogger.dto.LogDTO;
+import io.ryhunwashere.auditlogger.dto.LogDTO.ActionType;
+import io.ryhunwashere.auditlogger.dto.LogDTO.Source;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Compact binary encoding of a {@link LogDTO} as a WAL record payload.<br>
+ * Unlike the HTTP representation it keeps the server-generated log UUID,
+ * so replaying a record after a crash is deduplicated by {@code ON CONFLICT (log_uuid, ts)}.
+ */
+final class WalRecordCodec {
+    private final ObjectMapper mapper = JsonMapper.builder().build();
+
+    byte @NotNull [] encode(@NotNull LogDTO log) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            writeInstant(out, log.getTimestamp());
+            writeUUID(out, log.getPlayerUUID());
+            writeString(out, log.getPlayerName());
+            writeString(out, log.getActionType() != null ? log.getActionType().name() : null);
+            byte[] actionDetail = log.getActionDetailJson() != null
+                    ? log.getActionDetailJson().getBytes(StandardCharsets.UTF_8)
+                    : mapper.writeValueAsBytes(log.getActionDetail());
+            out.writeInt(actionDetail.length);
+            out.write(actionDetail);
+            writeString(out, log.getWorld());
+            out.writeDouble(log.getX());
+            out.writeDouble(log.getY());
+            out.writeDouble(log.getZ());
+            writeString(out, log.getSource() != null ? log.getSource().name() : null);
+            writeUUID(out, log.getLogUUID());
+        }
+        return bytes.toByteArray();
+    }
+
+    @NotNull LogDTO decode(byte @NotNull [] payload) throws IOException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload))) {
+            LogDTO log = new LogDTO();
+            log.setTimestamp(readInstant(in));
+            log.setPlayerUUID(readUUID(in));
+            log.setPlayerName(readString(in));
+            String actionType = readString(in);
+            log.setActionType(actionType != null ? ActionType.valueOf(actionType) : null);
+            byte[] actionDetail = new byte[in.readInt()];
+            in.readFully(actionDetail);
+            // Written from a valid map or raw JSON, and only ever passed on to the DB
+            log.setActionDetailJson(new String(actionDetail, StandardCharsets.UTF_8));
+            log.setWorld(readString(in));
+            log.setX(in.readDouble());
+            log.setY(in.readDouble());
+            log.setZ(in.readDouble());
+            String source = readString(in);
+            log.setSource(source != null ? Source.valueOf(source) : null);
+            log.setLogUUID(readUUID(in));
+            return log;
+        }
+    }
+
+    private static void writeInstant(@NotNull DataOutputStream out, Instant instant) throws IOException {
+        out.writeBoolean(instant != null);
+        if (instant != null) {
+            out.writeLong(instant.getEpochSecond());
+            out.writeInt(instant.getNano());
+        }
+    }
+
+    private static Instant readInstant(@NotNull DataInputStream in) throws IOException {
+        return in.readBoolean() ? Instant.ofEpochSecond(in.readLong(), in.readInt()) : null;
+    }
+
+    private static void writeUUID(@NotNull DataOutputStream out, UUID uuid) throws IOException {
+        out.writeBoolean(uuid != null);
+        if (uuid != null) {
+            out.writeLong(uuid.getMostSignificantBits());
+            out.writeLong(uuid.getLeastSignificantBits());
+        }
+    }
+
+    private static UUID readUUID(@NotNull DataInputStream in) throws IOException {
+        return in.readBoolean() ? new UUID(in.readLong(), in.readLong()) : null;
+    }
+
+    private static void writeString(@NotNull DataOutputStream out, String str) throws IOException {
+        out.writeBoolean(str != null);
+        if (str != null)
+            out.writeUTF(str);
+    }
+
+    private static String readString(@NotNull DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
@@ -0,0 +1,166 @@
+package io.ryhunwashere.auditlogger.wal;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32C;
+
+/**
+ * One fixed-size, memory-mapped file of the write-ahead log.<br>
+ * Layout: {@code [magic:int][version:int][segmentId:long]} followed by records of
+ * {@code [length:int][crc:int][payload]}. The CRC covers the segment id and the payload,
+ * so stale records left behind in a recycled file never validate under the new id.
+ */
+final class WalSegment {
+    private static final int MAGIC = 0x41554457;   // "AUDW"
+    private static final int VERSION = 1;
+    static final int HEADER_SIZE = 16;
+    static final int RECORD_HEADER_SIZE = 8;
+
+    private final long id;
+    private final Path path;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+
+    // Records appended to this segment that are not yet committed to a database
+    private final AtomicInteger pending = new AtomicInteger();
+    private volatile boolean sealed;
+
+    private WalSegment(long id, Path path, FileChannel channel, MappedByteBuffer buffer) {
+        this.id = id;
+        this.path = path;
+        this.channel = channel;
+        this.buffer = buffer;
+    }
+
+    /**
+     * Map a new or recycled file as an empty segment with the given id.<br>
+     * The header of the first record is cleared before the new id is written,
+     * so recovery stops right after the header even if stale records were to validate.
+     */
+    static @NotNull WalSegment create(@NotNull Path path, long id, int size) throws IOException {
+        FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        buffer.putLong(HEADER_SIZE, 0L);
+        buffer.force(HEADER_SIZE, RECORD_HEADER_SIZE);
+        buffer.putInt(MAGIC).putInt(VERSION).putLong(id);
+        return new WalSegment(id, path, channel, buffer);
+    }
+
+    /**
+     * Map an existing segment file for crash recovery.
+     *
+     * @return The segment, or null if the file has no valid header.
+     */
+    static WalSegment open(@NotNull Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (channel.size() < HEADER_SIZE) {
+            channel.close();
+            return null;
+        }
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+        if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+            channel.close();
+            return null;
+        }
+        long id = buffer.getLong();
+        return new WalSegment(id, path, channel, buffer);
+    }
+
+    /**
+     * Read every valid record from the current position, stopping at the first empty, torn or stale one.
+     */
+    @NotNull List<byte[]> readRecords() {
+        List<byte[]> records = new ArrayList<>();
+        while (buffer.remaining() >= RECORD_HEADER_SIZE) {
+            int start = buffer.position();
+            int length = buffer.getInt();
+            int crc = buffer.getInt();
+            if (length <= 0 || length > buffer.remaining()) {
+                buffer.position(start);
+                break;
+            }
+            byte[] payload = new byte[length];
+            buffer.get(payload);
+            if (checksum(payload) != crc) {
+                buffer.position(start);
+                break;
+            }
+            records.add(payload);
+        }
+        return records;
+    }
+
+    /**
+     * @return False if the record doesn't fit in the space left in this segment.
+     */
+    boolean append(byte @NotNull [] payload) {
+        if (buffer.remaining() < RECORD_HEADER_SIZE + payload.length)
+            return false;
+        buffer.putInt(payload.length);
+        buffer.putInt(checksum(payload));
+        buffer.put(payload);
+        pending.incrementAndGet();
+        return true;
+    }
+
+    private int checksum(byte @NotNull [] payload) {
+        CRC32C crc = new CRC32C();
+        crc.update(ByteBuffer.allocate(Long.BYTES).putLong(0, id));
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+
+    static int maxPayloadSize(int segmentSize) {
+        return segmentSize - HEADER_SIZE - RECORD_HEADER_SIZE;
+    }
+
+    void addPending(int count) {
+        pending.addAndGet(count);
+    }
+
+    /**
+     * @return Records of this segment still waiting to be committed.
+     */
+    int release(int count) {
+        return pending.addAndGet(-count);
+    }
+
+    int pending() {
+        return pending.get();
+    }
+
+    void seal() {
+        sealed = true;
+    }
+
+    boolean isSealed() {
+        return sealed;
+    }
+
+    void force() {
+        buffer.force();
+    }
+
+    void close() throws IOException {
+        buffer.force();
+        channel.close();
+    }
+
+    long id() {
+        return id;
+    }
+
+    Path path() {
+        return path;
+    }
+}
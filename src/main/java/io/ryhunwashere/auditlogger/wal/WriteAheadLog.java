@@ -0,0 +1,221 @@
+package io.ryhunwashere.auditlogger.wal;
+
+import io.ryhunwashere.auditlogger.dto.LogDTO;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * Segmented, memory-mapped, append-only log of every accepted {@link LogDTO}.<br>
+ * Logs are appended before they are queued and released once they are committed to PostgreSQL
+ * or the local fallback DB. A sealed segment whose logs are all released is the checkpoint:
+ * its file is recycled for a later segment (or deleted), so whatever remains on disk at startup
+ * is exactly what may not have been committed, and is replayed by {@link #recover()}.
+ */
+public class WriteAheadLog implements Closeable {
+    private static final Logger log = LoggerFactory.getLogger(WriteAheadLog.class);
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String FREE_PREFIX = "free-";
+    private static final String SUFFIX = ".wal";
+
+    private final Path directory;
+    private final int segmentSize;
+    private final boolean forceOnAppend;
+    private final int maxFreeSegments;
+    private final WalRecordCodec codec = new WalRecordCodec();
+
+    private final Map<Long, WalSegment> segments = new ConcurrentHashMap<>();
+    private final Deque<Path> freeFiles = new ArrayDeque<>();
+    private final List<Path> segmentFilesToRecover = new ArrayList<>();
+    private WalSegment active;
+    private long nextSegmentId = 1;
+
+    public WriteAheadLog(@NotNull Path directory, int segmentSize, boolean forceOnAppend, int maxFreeSegments)
+            throws IOException {
+        if (segmentSize <= WalSegment.HEADER_SIZE + WalSegment.RECORD_HEADER_SIZE)
+            throw new IllegalArgumentException("WAL segment size is too small: " + segmentSize);
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.forceOnAppend = forceOnAppend;
+        this.maxFreeSegments = maxFreeSegments;
+
+        Files.createDirectories(directory);
+        try (Stream<Path> files = Files.list(directory)) {
+            files.sorted().forEach(path -> {
+                String fileName = path.getFileName().toString();
+                if (fileName.startsWith(FREE_PREFIX) && fileName.endsWith(SUFFIX)) {
+                    freeFiles.add(path);
+                    seedSegmentId(fileName, FREE_PREFIX);
+                } else if (fileName.startsWith(SEGMENT_PREFIX) && fileName.endsWith(SUFFIX)) {
+                    segmentFilesToRecover.add(path);
+                    seedSegmentId(fileName, SEGMENT_PREFIX);
+                }
+            });
+        }
+    }
+
+    /**
+     * Segment ids must never repeat, or the records left in a recycled file would validate again under its new id.
+     * A free file keeps the id of the segment it was, so new ids start after every id still on disk,
+     * even after a clean shutdown recycled every segment.
+     */
+    private void seedSegmentId(@NotNull String fileName, @NotNull String prefix) {
+        String id = fileName.substring(prefix.length(), fileName.length() - SUFFIX.length());
+        try {
+            nextSegmentId = Math.max(nextSegmentId, Long.parseLong(id) + 1);
+        } catch (NumberFormatException e) {
+            log.warn("Ignoring id of unexpected WAL file name: {}", fileName);
+        }
+    }
+
+    /**
+     * Read back every log left in the segments found at startup.<br>
+     * The recovered logs stay pending in their segments until they are released like any other log.
+     *
+     * @return Logs that may not have been committed before the last shutdown or crash.
+     */
+    public synchronized @NotNull List<LogDTO> recover() throws IOException {
+        List<LogDTO> recovered = new ArrayList<>();
+        for (Path path : segmentFilesToRecover) {
+            WalSegment segment = WalSegment.open(path);
+            if (segment == null) {
+                log.warn("Skipping WAL file without a valid header: {}", path);
+                continue;
+            }
+            nextSegmentId = Math.max(nextSegmentId, segment.id() + 1);
+
+            List<byte[]> records = segment.readRecords();
+            for (byte[] record : records) {
+                LogDTO logDTO = codec.decode(record);
+                logDTO.setWalSegmentId(segment.id());
+                recovered.add(logDTO);
+            }
+            segment.addPending(records.size());
+            segment.seal();
+            segments.put(segment.id(), segment);
+            if (segment.pending() == 0)
+                recycle(segment);
+        }
+        segmentFilesToRecover.clear();
+        return recovered;
+    }
+
+    /**
+     * Append logs to the active segment, rolling over to a new segment when it is full.<br>
+     * Either every log is appended or none is: if one fails, the logs appended before it are released again.
+     */
+    public synchronized void append(@NotNull List<LogDTO> logs) throws IOException {
+        try {
+            for (LogDTO logDTO : logs) {
+                byte[] payload = codec.encode(logDTO);
+                if (payload.length > WalSegment.maxPayloadSize(segmentSize))
+                    throw new IOException("Log of " + payload.length + " bytes does not fit in a WAL segment.");
+
+                if (active == null || !active.append(payload)) {
+                    rollSegment();
+                    active.append(payload);
+                }
+                logDTO.setWalSegmentId(active.id());
+            }
+            if (forceOnAppend && active != null)
+                active.force();
+        } catch (IOException | RuntimeException e) {
+            release(logs);
+            throw e;
+        }
+    }
+
+    /**
+     * Mark logs as committed. Segments left without pending logs are recycled.
+     */
+    public void release(@NotNull List<LogDTO> logs) {
+        long segmentId = 0;
+        int count = 0;
+        for (LogDTO logDTO : logs) {
+            long logSegmentId = logDTO.getWalSegmentId();
+            if (logSegmentId == 0)
+                continue;
+            if (logSegmentId != segmentId) {
+                releaseFromSegment(segmentId, count);
+                segmentId = logSegmentId;
+                count = 0;
+            }
+            count++;
+            logDTO.setWalSegmentId(0);
+        }
+        releaseFromSegment(segmentId, count);
+    }
+
+    private void releaseFromSegment(long segmentId, int count) {
+        if (count == 0)
+            return;
+        WalSegment segment = segments.get(segmentId);
+        if (segment != null && segment.release(count) == 0 && segment.isSealed())
+            recycle(segment);
+    }
+
+    private void rollSegment() throws IOException {
+        if (active != null) {
+            WalSegment previous = active;
+            previous.seal();
+            if (previous.pending() == 0)
+                recycle(previous);
+        }
+
+        long id = nextSegmentId++;
+        Path path = directory.resolve(segmentFileName(id));
+        Path freeFile = freeFiles.pollFirst();
+        if (freeFile != null)
+            Files.move(freeFile, path);
+
+        active = WalSegment.create(path, id, segmentSize);
+        segments.put(id, active);
+    }
+
+    private synchronized void recycle(@NotNull WalSegment segment) {
+        if (!segments.remove(segment.id(), segment))
+            return;
+        try {
+            segment.close();
+            if (freeFiles.size() < maxFreeSegments) {
+                Path freeFile = directory.resolve(FREE_PREFIX + segment.id() + SUFFIX);
+                Files.move(segment.path(), freeFile);
+                freeFiles.addLast(freeFile);
+            } else {
+                Files.delete(segment.path());
+            }
+        } catch (IOException e) {
+            log.error("Failed to recycle WAL segment {}: {}", segment.id(), e.getMessage());
+        }
+    }
+
+    private static @NotNull String segmentFileName(long id) {
+        return SEGMENT_PREFIX + String.format("%020d", id) + SUFFIX;
+    }
+
+    public int liveSegmentCount() {
+        return segments.size();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        // A fully released active segment has nothing left to replay either
+        if (active != null) {
+            active.seal();
+            if (active.pending() == 0)
+                recycle(active);
+        }
+        for (WalSegment segment : segments.values())
+            segment.close();
+        segments.clear();
+        active = null;
+    }
+}
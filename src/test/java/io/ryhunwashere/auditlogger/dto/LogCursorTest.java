@@ -0,0 +1,35 @@
+package io.ryhunwashere.auditlogger.dto;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LogCursorTest {
+    @Test
+    void roundTripsTimestampAndId() {
+        LogCursor cursor = new LogCursor(Instant.parse("2026-03-01T12:34:56.123456789Z"), Long.MAX_VALUE);
+        assertEquals(cursor, LogCursor.decode(cursor.encode()));
+    }
+
+    @Test
+    void roundTripsTimestampBeforeEpoch() {
+        LogCursor cursor = new LogCursor(Instant.parse("1969-12-31T23:59:59.5Z"), 1);
+        assertEquals(cursor, LogCursor.decode(cursor.encode()));
+    }
+
+    @Test
+    void encodesAsUrlSafeString() {
+        String encoded = new LogCursor(Instant.ofEpochSecond(-1, 999_999_999), -1).encode();
+        assertTrue(encoded.matches("[A-Za-z0-9_-]+"), encoded);
+    }
+
+    @Test
+    void rejectsMalformedCursors() {
+        assertThrows(IllegalArgumentException.class, () -> LogCursor.decode("not a cursor!"));
+        assertThrows(IllegalArgumentException.class, () -> LogCursor.decode("AAAA"));
+        String valid = new LogCursor(Instant.EPOCH, 1).encode();
+        assertThrows(IllegalArgumentException.class, () -> LogCursor.decode(valid + "AAAA"));
+    }
+}
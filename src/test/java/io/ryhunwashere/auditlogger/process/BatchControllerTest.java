@@ -0,0 +1,118 @@
+package io.ryhunwashere.auditlogger.process;
+
+import io.ryhunwashere.auditlogger.process.BatchController.Mode;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BatchControllerTest {
+    private static final int MIN_BATCH_SIZE = 100;
+    private static final int MAX_BATCH_SIZE = 5000;
+    private static final long MIN_LINGER_MILLIS = 10;
+    private static final long MAX_LINGER_MILLIS = 3000;
+    private static final long LATENCY_SLO_MILLIS = 1000;
+
+    private final AtomicLong acceptedLogs = new AtomicLong();
+
+    @Test
+    void fixedModeNeverChanges() {
+        BatchController controller = controller(Mode.FIXED, 500);
+        for (int i = 0; i < 50; i++)
+            controller.onFlushed(500, TimeUnit.MILLISECONDS.toNanos(5), 10_000);
+        assertEquals(500, controller.batchSize());
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(MAX_LINGER_MILLIS), controller.lingerNanos());
+    }
+
+    @Test
+    void initialBatchSizeIsClamped() {
+        assertEquals(MIN_BATCH_SIZE, controller(Mode.FIXED, 1).batchSize());
+        assertEquals(MAX_BATCH_SIZE, controller(Mode.FIXED, 1_000_000).batchSize());
+    }
+
+    @Test
+    void latencyModeGrowsBatchesToDrainBacklog() {
+        BatchController controller = controller(Mode.LATENCY, MIN_BATCH_SIZE);
+        for (int i = 0; i < 50; i++)
+            controller.onFlushed(controller.batchSize(), TimeUnit.MILLISECONDS.toNanos(20), 100_000);
+        assertEquals(MAX_BATCH_SIZE, controller.batchSize());
+    }
+
+    @Test
+    void latencyModeShrinksBatchesThatFlushTooSlowly() {
+        BatchController controller = controller(Mode.LATENCY, MAX_BATCH_SIZE);
+        for (int i = 0; i < 50; i++)
+            controller.onFlushed(controller.batchSize(), TimeUnit.MILLISECONDS.toNanos(900), 100_000);
+        assertEquals(MIN_BATCH_SIZE, controller.batchSize());
+    }
+
+    @Test
+    void latencyModeLingerLeavesRoomForTheFlush() {
+        BatchController controller = controller(Mode.LATENCY, 500);
+        for (int i = 0; i < 20; i++)
+            controller.onFlushed(10, TimeUnit.MILLISECONDS.toNanos(400), 0);
+        long sloNanos = TimeUnit.MILLISECONDS.toNanos(LATENCY_SLO_MILLIS);
+        assertTrue(controller.lingerNanos() <= sloNanos - TimeUnit.MILLISECONDS.toNanos(400) + 1,
+                "Linger " + controller.lingerNanos() + "ns exceeds what the SLO leaves");
+        assertTrue(controller.lingerNanos() >= TimeUnit.MILLISECONDS.toNanos(MIN_LINGER_MILLIS));
+    }
+
+    @Test
+    void throughputModeSettlesAroundTheBestBatchSize() {
+        BatchController controller = controller(Mode.THROUGHPUT, MIN_BATCH_SIZE);
+        int bestBatchSize = 1000;
+        int minSeen = Integer.MAX_VALUE;
+        int maxSeen = 0;
+        for (int i = 0; i < 200; i++) {
+            int batchSize = controller.batchSize();
+            controller.onFlushed(batchSize, flushNanos(batchSize, bestBatchSize), 100_000);
+            if (i >= 100) {
+                minSeen = Math.min(minSeen, controller.batchSize());
+                maxSeen = Math.max(maxSeen, controller.batchSize());
+            }
+        }
+        // Once settled, the size hovers within a few steps of the best one
+        assertTrue(minSeen >= bestBatchSize / 2, "Settled as low as " + minSeen);
+        assertTrue(maxSeen <= bestBatchSize * 2, "Settled as high as " + maxSeen);
+    }
+
+    @Test
+    void staysWithinBoundsInEveryMode() {
+        for (Mode mode : Mode.values()) {
+            BatchController controller = controller(mode, 500);
+            for (int i = 0; i < 100; i++) {
+                acceptedLogs.addAndGet(i % 2 == 0 ? 0 : 1_000_000);
+                controller.onFlushed(i % 3 == 0 ? 1 : controller.batchSize(),
+                        TimeUnit.MILLISECONDS.toNanos(i % 5 == 0 ? 5000 : 1), i % 2 == 0 ? 0 : 1_000_000);
+                assertTrue(controller.batchSize() >= MIN_BATCH_SIZE && controller.batchSize() <= MAX_BATCH_SIZE);
+                assertTrue(controller.lingerNanos() >= TimeUnit.MILLISECONDS.toNanos(MIN_LINGER_MILLIS)
+                        && controller.lingerNanos() <= TimeUnit.MILLISECONDS.toNanos(MAX_LINGER_MILLIS));
+            }
+        }
+    }
+
+    @Test
+    void rejectsInvalidBounds() {
+        assertThrows(IllegalArgumentException.class, () -> new BatchController(Mode.FIXED, 100, 0, 100,
+                MIN_LINGER_MILLIS, MAX_LINGER_MILLIS, LATENCY_SLO_MILLIS, acceptedLogs::get));
+        assertThrows(IllegalArgumentException.class, () -> new BatchController(Mode.FIXED, 100, 200, 100,
+                MIN_LINGER_MILLIS, MAX_LINGER_MILLIS, LATENCY_SLO_MILLIS, acceptedLogs::get));
+        assertThrows(IllegalArgumentException.class, () -> new BatchController(Mode.FIXED, 100, 100, 200,
+                MAX_LINGER_MILLIS, MIN_LINGER_MILLIS, LATENCY_SLO_MILLIS, acceptedLogs::get));
+    }
+
+    private BatchController controller(Mode mode, int initialBatchSize) {
+        return new BatchController(mode, initialBatchSize, MIN_BATCH_SIZE, MAX_BATCH_SIZE,
+                MIN_LINGER_MILLIS, MAX_LINGER_MILLIS, LATENCY_SLO_MILLIS, acceptedLogs::get);
+    }
+
+    /**
+     * Fixed cost per batch plus a per-log cost that grows past the best size, so throughput peaks there.
+     */
+    private static long flushNanos(int batchSize, int bestBatchSize) {
+        double perLogMicros = 10 + 100.0 * Math.max(0, batchSize - bestBatchSize) / bestBatchSize;
+        return TimeUnit.MICROSECONDS.toNanos((long) (20_000 + batchSize * perLogMicros));
+    }
+}
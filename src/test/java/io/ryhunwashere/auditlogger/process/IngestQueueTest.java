@@ -0,0 +1,130 @@
+package io.ryhunwashere.auditlogger.process;
+
+import io.ryhunwashere.auditlogger.dto.LogDTO;
+import io.ryhunwashere.auditlogger.process.IngestQueue.OverflowPolicy;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IngestQueueTest {
+    private final List<LogDTO> spilled = new ArrayList<>();
+
+    @Test
+    void rejectRefusesRequestThatDoesNotFit() {
+        IngestQueue queue = queue(3, OverflowPolicy.REJECT);
+        assertTrue(queue.offer(logs(2)));
+        assertFalse(queue.offer(logs(2)));
+        assertEquals(2, queue.size());
+        assertTrue(spilled.isEmpty());
+    }
+
+    @Test
+    void spillWritesOverflowToSpillHandler() {
+        IngestQueue queue = queue(3, OverflowPolicy.SPILL);
+        List<LogDTO> logs = logs(5);
+        assertTrue(queue.offer(logs));
+        assertEquals(3, queue.size());
+        assertEquals(logs.subList(3, 5), spilled);
+    }
+
+    @Test
+    void remainderIsNeverRefused() {
+        IngestQueue queue = queue(2, OverflowPolicy.REJECT);
+        List<LogDTO> logs = logs(3);
+        queue.offerRemainder(logs);
+        assertEquals(2, queue.size());
+        assertEquals(logs.subList(2, 3), spilled);
+    }
+
+    @Test
+    void blockRefusesRequestOnlyIfNothingWasEnqueued() {
+        IngestQueue queue = queue(2, OverflowPolicy.BLOCK);
+        assertTrue(queue.offer(logs(2)));
+        assertFalse(queue.offer(logs(1)));
+        assertTrue(spilled.isEmpty());
+    }
+
+    @Test
+    void blockSpillsRestOfPartiallyEnqueuedRequestOnTimeout() {
+        IngestQueue queue = queue(2, OverflowPolicy.BLOCK);
+        List<LogDTO> logs = logs(3);
+        assertTrue(queue.offer(logs));
+        assertEquals(2, queue.size());
+        assertEquals(logs.subList(2, 3), spilled);
+    }
+
+    @Test
+    void blockWaitsForFreeCapacity() throws InterruptedException {
+        IngestQueue queue = new IngestQueue(1, OverflowPolicy.BLOCK, 5_000, spilled::addAll);
+        queue.offer(logs(1));
+        Thread consumer = Thread.ofVirtual().start(() -> {
+            try {
+                Thread.sleep(100);
+                queue.poll(1, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        assertTrue(queue.offer(logs(1)));
+        consumer.join();
+        assertEquals(1, queue.size());
+        assertTrue(spilled.isEmpty());
+    }
+
+    @Test
+    void blockAcceptsRequestInterruptedAfterPartialEnqueue() throws InterruptedException {
+        IngestQueue queue = new IngestQueue(2, OverflowPolicy.BLOCK, 10_000, spilled::addAll);
+        queue.offer(logs(1));
+        List<LogDTO> logs = logs(3);
+        AtomicBoolean accepted = new AtomicBoolean();
+        AtomicBoolean interrupted = new AtomicBoolean();
+        CountDownLatch offered = new CountDownLatch(1);
+        Thread producer = Thread.ofVirtual().start(() -> {
+            accepted.set(queue.offer(logs));
+            interrupted.set(Thread.currentThread().isInterrupted());
+            offered.countDown();
+        });
+        // The first log fits, the second one blocks until the producer is interrupted
+        while (queue.size() < 2)
+            Thread.sleep(10);
+        producer.interrupt();
+        assertTrue(offered.await(5, TimeUnit.SECONDS));
+
+        assertTrue(accepted.get());
+        assertTrue(interrupted.get());
+        assertEquals(2, queue.size());
+        assertEquals(logs.subList(1, 3), spilled);
+    }
+
+    @Test
+    void blockRefusesRequestInterruptedBeforeAnyEnqueue() throws InterruptedException {
+        IngestQueue queue = new IngestQueue(1, OverflowPolicy.BLOCK, 10_000, spilled::addAll);
+        queue.offer(logs(1));
+        AtomicBoolean accepted = new AtomicBoolean(true);
+        Thread producer = Thread.ofVirtual().start(() -> accepted.set(queue.offer(logs(2))));
+        Thread.sleep(100);
+        producer.interrupt();
+        producer.join();
+
+        assertFalse(accepted.get());
+        assertEquals(1, queue.size());
+        assertTrue(spilled.isEmpty());
+    }
+
+    private IngestQueue queue(int capacity, OverflowPolicy overflowPolicy) {
+        return new IngestQueue(capacity, overflowPolicy, 50, spilled::addAll);
+    }
+
+    private static List<LogDTO> logs(int count) {
+        List<LogDTO> logs = new ArrayList<>(count);
+        for (int i = 0; i < count; i++)
+            logs.add(new LogDTO());
+        return logs;
+    }
+}
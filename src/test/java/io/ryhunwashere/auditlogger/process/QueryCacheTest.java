@@ -0,0 +1,136 @@
+package io.ryhunwashere.auditlogger.process;
+
+import io.ryhunwashere.auditlogger.dto.LogDTO;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class QueryCacheTest {
+    private static final long TTL_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @Test
+    void servesCachedResultUntilInvalidated() {
+        QueryCache<String> cache = new QueryCache<>(10, TTL_NANOS);
+        List<LogDTO> first = cache.get("key", false, this::load);
+        assertSame(first, cache.get("key", false, this::load));
+        assertEquals(1, loads.get());
+
+        cache.invalidateOpenWindows();
+        assertNotSame(first, cache.get("key", false, this::load));
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void closedWindowsSurviveFlushes() {
+        QueryCache<String> cache = new QueryCache<>(10, TTL_NANOS);
+        List<LogDTO> first = cache.get("key", true, this::load);
+        cache.invalidateOpenWindows();
+        assertSame(first, cache.get("key", true, this::load));
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void lateLogsInvalidateClosedWindows() {
+        QueryCache<String> cache = new QueryCache<>(10, TTL_NANOS);
+        cache.get("key", true, this::load);
+        cache.invalidateAll();
+        cache.get("key", true, this::load);
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void resultLoadedDuringInvalidationIsNotServedAfterwards() {
+        QueryCache<String> cache = new QueryCache<>(10, TTL_NANOS);
+        cache.get("key", true, () -> {
+            cache.invalidateAll();
+            return load();
+        });
+        cache.get("key", true, this::load);
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void expiredEntriesAreReloaded() {
+        QueryCache<String> cache = new QueryCache<>(10, 0);
+        cache.get("key", true, this::load);
+        cache.get("key", true, this::load);
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void nullResultsAreNotCached() {
+        QueryCache<String> cache = new QueryCache<>(10, TTL_NANOS);
+        assertNull(cache.get("key", true, () -> {
+            loads.incrementAndGet();
+            return null;
+        }));
+        cache.get("key", true, this::load);
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void evictsLeastRecentlyUsed() {
+        QueryCache<String> cache = new QueryCache<>(2, TTL_NANOS);
+        cache.get("a", true, this::load);
+        cache.get("b", true, this::load);
+        cache.get("a", true, this::load);
+        cache.get("c", true, this::load);
+        assertEquals(2, cache.size());
+        assertEquals(3, loads.get());
+
+        cache.get("a", true, this::load);
+        assertEquals(3, loads.get());
+        cache.get("b", true, this::load);
+        assertEquals(4, loads.get());
+    }
+
+    @Test
+    void concurrentCallsShareOneLoad() throws Exception {
+        QueryCache<String> cache = new QueryCache<>(10, TTL_NANOS);
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            Future<List<LogDTO>> first = executor.submit(() -> cache.get("key", true, () -> {
+                loading.countDown();
+                awaitUninterruptibly(release);
+                return load();
+            }));
+            assertTrue(loading.await(5, TimeUnit.SECONDS));
+            Future<List<LogDTO>> second = executor.submit(() -> cache.get("key", true, this::load));
+            // Give the second caller time to join the load in flight
+            Thread.sleep(100);
+            release.countDown();
+            assertSame(first.get(), second.get());
+        }
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void failedLoadIsNotCached() throws Exception {
+        QueryCache<String> cache = new QueryCache<>(10, TTL_NANOS);
+        assertThrows(IllegalStateException.class, () -> cache.get("key", true, () -> {
+            throw new IllegalStateException("query failed");
+        }));
+        cache.get("key", true, this::load);
+        assertEquals(1, loads.get());
+    }
+
+    private List<LogDTO> load() {
+        loads.incrementAndGet();
+        return List.of(new LogDTO());
+    }
+
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package io.ryhunwashere.auditlogger.process;
+
+import io.ryhunwashere.auditlogger.dto.LogCursor;
+import io.ryhunwashere.auditlogger.dto.LogDTO;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RecentLogsBufferTest {
+    private static final long RETENTION_MILLIS = 60_000;
+    private static final UUID PLAYER = UUID.randomUUID();
+
+    private final Instant now = Instant.now().plus(1, ChronoUnit.MINUTES).truncatedTo(ChronoUnit.MICROS);
+    private final Instant since = now.minus(1, ChronoUnit.HOURS);
+    private final Instant until = now.plus(1, ChronoUnit.HOURS);
+
+    @Test
+    void pagesLogsWithSameTimestampWithoutDuplicates() {
+        RecentLogsBuffer buffer = new RecentLogsBuffer(100, RETENTION_MILLIS);
+        List<LogDTO> logs = new ArrayList<>();
+        for (int i = 0; i < 5; i++)
+            logs.add(log("log" + i, now, 0, 0));
+        buffer.add(logs);
+
+        Set<String> served = new HashSet<>();
+        LogCursor after = null;
+        for (int page = 0; page < 3; page++) {
+            List<LogDTO> logsOfPage = buffer.logsOfPlayer(PLAYER, since, until, 2, after);
+            for (LogDTO log : logsOfPage)
+                assertTrue(served.add(log.getPlayerName()), "Served twice: " + log.getPlayerName());
+            after = LogCursor.decode(logsOfPage.getLast().getCursor());
+        }
+        assertEquals(5, served.size());
+        assertTrue(buffer.logsOfPlayer(PLAYER, since, until, 2, after).isEmpty());
+    }
+
+    @Test
+    void servesNewestFirst() {
+        RecentLogsBuffer buffer = new RecentLogsBuffer(100, RETENTION_MILLIS);
+        buffer.add(List.of(log("old", now.minusSeconds(2), 0, 0), log("new", now, 0, 0),
+                log("middle", now.minusSeconds(1), 0, 0)));
+
+        List<LogDTO> page = buffer.logsOfPlayer(PLAYER, since, until, 10, null);
+        assertEquals(List.of("new", "middle", "old"), page.stream().map(LogDTO::getPlayerName).toList());
+    }
+
+    @Test
+    void servesOnlyLogsInArea() {
+        RecentLogsBuffer buffer = new RecentLogsBuffer(100, RETENTION_MILLIS);
+        buffer.add(List.of(log("inside", now, 10, 10), log("corner", now, 20, 20), log("far", now, 500, 500)));
+
+        List<String> square = buffer.logsInArea("world", 20, 0, 0, false, since, until, 10, null)
+                .stream().map(LogDTO::getPlayerName).toList();
+        assertEquals(Set.of("inside", "corner"), Set.copyOf(square));
+
+        List<String> circle = buffer.logsInArea("world", 20, 0, 0, true, since, until, 10, null)
+                .stream().map(LogDTO::getPlayerName).toList();
+        assertEquals(List.of("inside"), circle);
+        assertTrue(buffer.logsInArea("world_nether", 20, 0, 0, false, since, until, 10, null).isEmpty());
+    }
+
+    @Test
+    void evictionMovesCoverageStartPastEvictedLogs() {
+        RecentLogsBuffer buffer = new RecentLogsBuffer(2, RETENTION_MILLIS);
+        Instant oldest = now.minusSeconds(3);
+        buffer.add(List.of(log("a", oldest, 0, 0), log("b", now.minusSeconds(2), 0, 0),
+                log("c", now.minusSeconds(1), 0, 0)));
+
+        assertTrue(buffer.coverageStart().isAfter(oldest));
+        assertEquals(2, buffer.size());
+        List<String> page = buffer.logsOfPlayer(PLAYER, since, until, 10, null)
+                .stream().map(LogDTO::getPlayerName).toList();
+        assertEquals(List.of("c", "b"), page);
+    }
+
+    @Test
+    void memoryCursorContinuesStrictlyBeforeItsTimestampInMainDb() {
+        RecentLogsBuffer buffer = new RecentLogsBuffer(100, RETENTION_MILLIS);
+        buffer.add(List.of(log("a", now, 0, 0)));
+        LogCursor memoryCursor = LogCursor.decode(buffer.logsOfPlayer(PLAYER, since, until, 1, null)
+                .getFirst().getCursor());
+        assertTrue(memoryCursor.id() >= RecentLogsBuffer.FIRST_MEMORY_ROW_ID);
+
+        assertEquals(new LogCursor(now, 0L), RecentLogsBuffer.mainDbCursor(memoryCursor));
+        LogCursor mainDbCursor = new LogCursor(now, 42L);
+        assertSame(mainDbCursor, RecentLogsBuffer.mainDbCursor(mainDbCursor));
+        assertNull(RecentLogsBuffer.mainDbCursor(null));
+    }
+
+    private static LogDTO log(String name, Instant ts, double x, double z) {
+        LogDTO log = new LogDTO();
+        log.setTimestamp(ts);
+        log.setPlayerUUID(PLAYER);
+        log.setPlayerName(name);
+        log.setWorld("world");
+        log.setX(x);
+        log.setZ(z);
+        return log;
+    }
+}
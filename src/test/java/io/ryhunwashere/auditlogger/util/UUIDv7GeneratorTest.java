@@ -0,0 +1,65 @@
+package io.ryhunwashere.auditlogger.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UUIDv7GeneratorTest {
+    @Test
+    void hasVersion7AndRfcVariant() {
+        UUID uuid = UUIDv7Generator.next();
+        assertEquals(7, uuid.version());
+        assertEquals(2, uuid.variant());
+    }
+
+    @Test
+    void carriesCurrentUnixMillis() {
+        long before = System.currentTimeMillis();
+        UUID uuid = UUIDv7Generator.next();
+        long after = System.currentTimeMillis();
+        long millis = uuid.getMostSignificantBits() >>> 16;
+        // The sequence may have advanced the timestamp a little past the clock
+        assertTrue(millis >= before && millis <= after + 1000, "Timestamp " + millis);
+    }
+
+    @Test
+    void strictlyIncreasesWithinAThread() {
+        UUID previous = UUIDv7Generator.next();
+        // Far more than the 4096 sequence values of one millisecond
+        for (int i = 0; i < 100_000; i++) {
+            UUID next = UUIDv7Generator.next();
+            assertTrue(Long.compareUnsigned(next.getMostSignificantBits(), previous.getMostSignificantBits()) > 0,
+                    previous + " then " + next);
+            previous = next;
+        }
+    }
+
+    @Test
+    void neverRepeatsAcrossThreads() throws Exception {
+        int threads = 8;
+        int perThread = 20_000;
+        List<Long> timeAndSequences = Collections.synchronizedList(new ArrayList<>());
+        try (ExecutorService executor = Executors.newFixedThreadPool(threads)) {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(() -> {
+                    List<Long> generated = new ArrayList<>(perThread);
+                    for (int i = 0; i < perThread; i++)
+                        generated.add(UUIDv7Generator.next().getMostSignificantBits());
+                    timeAndSequences.addAll(generated);
+                }));
+            }
+            for (Future<?> future : futures)
+                future.get();
+        }
+        assertEquals(threads * perThread, timeAndSequences.stream().distinct().count());
+    }
+}
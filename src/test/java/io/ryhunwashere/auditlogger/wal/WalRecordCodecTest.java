@@ -0,0 +1,66 @@
+package io.ryhunwashere.auditlogger.wal;
+
+import io.ryhunwashere.auditlogger.dto.LogDTO;
+import io.ryhunwashere.auditlogger.dto.LogDTO.ActionType;
+import io.ryhunwashere.auditlogger.dto.LogDTO.Source;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WalRecordCodecTest {
+    private final WalRecordCodec codec = new WalRecordCodec();
+
+    @Test
+    void roundTripsEveryField() throws IOException {
+        LogDTO log = new LogDTO();
+        log.setTimestamp(Instant.parse("2026-03-01T12:34:56.123456789Z"));
+        log.setPlayerUUID(UUID.randomUUID());
+        log.setPlayerName("Steve");
+        log.setActionType(ActionType.BLOCK_BREAK);
+        Map<String, Object> actionDetail = new LinkedHashMap<>();
+        actionDetail.put("block", "minecraft:stone");
+        actionDetail.put("count", 3);
+        log.setActionDetail(actionDetail);
+        log.setWorld("world_nether");
+        log.setX(1.5);
+        log.setY(-64);
+        log.setZ(29_999_999.25);
+        log.setSource(Source.PLAYER);
+        log.generateLogUUID();
+
+        LogDTO decoded = codec.decode(codec.encode(log));
+
+        assertEquals(log.getTimestamp(), decoded.getTimestamp());
+        assertEquals(log.getPlayerUUID(), decoded.getPlayerUUID());
+        assertEquals(log.getPlayerName(), decoded.getPlayerName());
+        assertEquals(log.getActionType(), decoded.getActionType());
+        assertEquals("{\"block\":\"minecraft:stone\",\"count\":3}", decoded.getActionDetailJson());
+        assertEquals(log.getWorld(), decoded.getWorld());
+        assertEquals(log.getX(), decoded.getX());
+        assertEquals(log.getY(), decoded.getY());
+        assertEquals(log.getZ(), decoded.getZ());
+        assertEquals(log.getSource(), decoded.getSource());
+        assertEquals(log.getLogUUID(), decoded.getLogUUID());
+    }
+
+    @Test
+    void keepsRawActionDetailAndMissingFields() throws IOException {
+        LogDTO log = new LogDTO();
+        log.setActionDetailJson("{\"message\":\"hi\"}");
+
+        LogDTO decoded = codec.decode(codec.encode(log));
+
+        assertEquals("{\"message\":\"hi\"}", decoded.getActionDetailJson());
+        assertNull(decoded.getTimestamp());
+        assertNull(decoded.getPlayerUUID());
+        assertNull(decoded.getActionType());
+        assertNull(decoded.getSource());
+        assertNull(decoded.getLogUUID());
+    }
+}
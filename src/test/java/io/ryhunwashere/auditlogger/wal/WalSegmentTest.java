@@ -0,0 +1,104 @@
+package io.ryhunwashere.auditlogger.wal;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WalSegmentTest {
+    private static final int SEGMENT_SIZE = 4096;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void readsBackAppendedRecords() throws IOException {
+        Path path = directory.resolve("segment.wal");
+        WalSegment segment = WalSegment.create(path, 7, SEGMENT_SIZE);
+        assertTrue(segment.append(bytes("first")));
+        assertTrue(segment.append(bytes("second")));
+        segment.close();
+
+        WalSegment reopened = WalSegment.open(path);
+        assertNotNull(reopened);
+        assertEquals(7, reopened.id());
+        List<byte[]> records = reopened.readRecords();
+        assertEquals(2, records.size());
+        assertEquals("first", string(records.get(0)));
+        assertEquals("second", string(records.get(1)));
+        reopened.close();
+    }
+
+    @Test
+    void stopsAtCorruptedRecord() throws IOException {
+        Path path = directory.resolve("segment.wal");
+        WalSegment segment = WalSegment.create(path, 1, SEGMENT_SIZE);
+        segment.append(bytes("first"));
+        segment.append(bytes("second"));
+        segment.close();
+
+        // Flip a payload byte of the second record
+        int secondPayload = WalSegment.HEADER_SIZE + WalSegment.RECORD_HEADER_SIZE + "first".length()
+                + WalSegment.RECORD_HEADER_SIZE;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(bytes("X")), secondPayload);
+        }
+
+        WalSegment reopened = WalSegment.open(path);
+        assertNotNull(reopened);
+        List<byte[]> records = reopened.readRecords();
+        assertEquals(1, records.size());
+        assertEquals("first", string(records.getFirst()));
+        reopened.close();
+    }
+
+    @Test
+    void recycledFileHasNoRecordsUnderItsNewId() throws IOException {
+        Path path = directory.resolve("segment.wal");
+        WalSegment segment = WalSegment.create(path, 1, SEGMENT_SIZE);
+        segment.append(bytes("stale"));
+        segment.close();
+
+        WalSegment.create(path, 2, SEGMENT_SIZE).close();
+
+        WalSegment reopened = WalSegment.open(path);
+        assertNotNull(reopened);
+        assertEquals(2, reopened.id());
+        assertTrue(reopened.readRecords().isEmpty());
+        reopened.close();
+    }
+
+    @Test
+    void refusesRecordThatDoesNotFit() throws IOException {
+        WalSegment segment = WalSegment.create(directory.resolve("segment.wal"), 1, SEGMENT_SIZE);
+        assertFalse(segment.append(new byte[WalSegment.maxPayloadSize(SEGMENT_SIZE) + 1]));
+        assertTrue(segment.append(new byte[WalSegment.maxPayloadSize(SEGMENT_SIZE)]));
+        assertEquals(1, segment.pending());
+        segment.close();
+    }
+
+    @Test
+    void fileWithoutHeaderIsNotASegment() throws IOException {
+        Path path = directory.resolve("segment.wal");
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(SEGMENT_SIZE));
+        }
+        assertNull(WalSegment.open(path));
+    }
+
+    private static byte[] bytes(String str) {
+        return str.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String string(byte[] bytes) {
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,141 @@
+package io.ryhunwashere.auditlogger.wal;
+
+import io.ryhunwashere.auditlogger.dto.LogDTO;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WriteAheadLogTest {
+    // Fits a few logs, so tests roll over segments quickly
+    private static final int SEGMENT_SIZE = 512;
+    private static final int MAX_FREE_SEGMENTS = 4;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void recoversLogsThatWereNeverReleased() throws IOException {
+        WriteAheadLog wal = open();
+        List<LogDTO> logs = logs(3);
+        wal.append(logs);
+        wal.close();
+
+        List<LogDTO> recovered = open().recover();
+        assertEquals(names(logs), names(recovered));
+        assertTrue(recovered.stream().allMatch(log -> log.getWalSegmentId() != 0));
+    }
+
+    @Test
+    void cleanShutdownLeavesNothingToRecover() throws IOException {
+        WriteAheadLog wal = open();
+        List<LogDTO> logs = appendOneByOne(wal, 20);
+        wal.release(logs);
+        wal.close();
+
+        assertTrue(open().recover().isEmpty());
+        try (Stream<Path> files = Files.list(directory)) {
+            assertTrue(files.noneMatch(path -> path.getFileName().toString().startsWith("segment-")));
+        }
+    }
+
+    @Test
+    void recycledFilesNeverReplayStaleRecords() throws IOException {
+        WriteAheadLog wal = open();
+        wal.release(appendOneByOne(wal, 20));
+        wal.close();
+
+        // Every segment was recycled, so the new segments reuse the free files
+        WriteAheadLog reopened = open();
+        assertTrue(reopened.recover().isEmpty());
+        List<LogDTO> logs = appendOneByOne(reopened, 6);
+        // Crash: the WAL is never closed
+
+        List<LogDTO> recovered = open().recover();
+        assertEquals(names(logs), names(recovered));
+    }
+
+    @Test
+    void recoveredLogsAreReleasedLikeOthers() throws IOException {
+        WriteAheadLog wal = open();
+        appendOneByOne(wal, 10);
+        wal.close();
+
+        WriteAheadLog reopened = open();
+        List<LogDTO> recovered = reopened.recover();
+        assertEquals(10, recovered.size());
+        reopened.release(recovered);
+        assertEquals(0, reopened.liveSegmentCount());
+        reopened.close();
+
+        assertTrue(open().recover().isEmpty());
+    }
+
+    @Test
+    void failedAppendReleasesLogsAlreadyAppended() throws IOException {
+        WriteAheadLog wal = open();
+        List<LogDTO> logs = logs(2);
+        logs.getLast().setPlayerName("x".repeat(SEGMENT_SIZE));
+
+        assertThrows(IOException.class, () -> wal.append(logs));
+        assertEquals(0, logs.getFirst().getWalSegmentId());
+
+        // The segment of the failed request is recycled once it's full, since nothing is pending in it
+        wal.release(appendOneByOne(wal, 20));
+        assertEquals(1, wal.liveSegmentCount());
+        wal.close();
+        assertTrue(open().recover().isEmpty());
+    }
+
+    @Test
+    void segmentIdsKeepIncreasingAcrossRestarts() throws IOException {
+        WriteAheadLog wal = open();
+        List<LogDTO> first = appendOneByOne(wal, 1);
+        long firstSegmentId = first.getFirst().getWalSegmentId();
+        wal.release(first);
+        wal.close();
+
+        WriteAheadLog reopened = open();
+        reopened.recover();
+        List<LogDTO> second = appendOneByOne(reopened, 1);
+        assertTrue(second.getFirst().getWalSegmentId() > firstSegmentId);
+        reopened.close();
+    }
+
+    private WriteAheadLog open() throws IOException {
+        return new WriteAheadLog(directory, SEGMENT_SIZE, false, MAX_FREE_SEGMENTS);
+    }
+
+    private static List<LogDTO> appendOneByOne(WriteAheadLog wal, int count) throws IOException {
+        List<LogDTO> logs = logs(count);
+        for (LogDTO log : logs)
+            wal.append(List.of(log));
+        return logs;
+    }
+
+    private static List<LogDTO> logs(int count) {
+        List<LogDTO> logs = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            LogDTO log = new LogDTO();
+            log.setTimestamp(Instant.now());
+            log.setPlayerName("player" + i);
+            log.setActionDetailJson("{}");
+            log.setWorld("world");
+            log.generateLogUUID();
+            logs.add(log);
+        }
+        return logs;
+    }
+
+    private static List<String> names(List<LogDTO> logs) {
+        return logs.stream().map(LogDTO::getPlayerName).toList();
+    }
+}